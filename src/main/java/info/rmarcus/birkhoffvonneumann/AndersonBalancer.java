@@ -0,0 +1,182 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
+
+/**
+ * Finds Sinkhorn scaling vectors with Anderson-accelerated Sinkhorn-Knopp sweeps.
+ * 
+ * A sweep is a fixed-point map on the log of the column scaling vector: scale the rows to
+ * sum to one, then set each column's scaling so that it sums to one. Instead of just
+ * taking the map's output as the next point, Anderson acceleration combines the last few
+ * outputs, choosing the combination whose residuals (output minus input) cancel out best
+ * in the least-squares sense. On nearly decomposable matrices, where each plain sweep only
+ * removes a sliver of the error, this takes a small fraction of the sweeps.
+ * 
+ * If the extrapolated point is not finite, or the least-squares system is singular, the
+ * history is dropped and the plain sweep's output is used instead.
+ *
+ */
+class AndersonBalancer {
+	/**
+	 * The number of past sweeps combined at each step.
+	 */
+	static final int MEMORY = 5;
+
+	private AndersonBalancer() {
+
+	}
+
+	/**
+	 * @param c the starting column scaling, which is updated in place. The row scaling is
+	 * always computed from it.
+	 */
+	static SinkhornResult scale(SinkhornSweeper sweeper, SinkhornOptions options, double[] c) {
+		int n = sweeper.size();
+		double tolerance = options.getTolerance().forSize(n);
+		double[] r = new double[n];
+		double[] colSums = new double[n];
+
+		// x is log(c), g is the map's output and f = g - x its residual
+		double[] x = new double[n];
+		for (int col = 0; col < n; col++)
+			x[col] = Math.log(c[col]);
+
+		double[] g = new double[n];
+		double[] f = new double[n];
+		double[] prevG = new double[n];
+		double[] prevF = new double[n];
+
+		// the differences between consecutive g's and f's, in a ring buffer
+		double[][] dg = new double[MEMORY][n];
+		double[][] df = new double[MEMORY][n];
+		int history = 0;
+		int next = 0;
+
+		int iterations = 0;
+		double residual;
+		while (true) {
+			for (int col = 0; col < n; col++)
+				c[col] = Math.exp(x[col]);
+
+			sweeper.rowSums(c, r);
+			for (int row = 0; row < n; row++) {
+				if (r[row] == 0.0)
+					throw new BVNRuntimeException("Row " + row + " has no positive entries and cannot be balanced");
+
+				r[row] = 1.0 / r[row];
+			}
+
+			sweeper.colSums(r, colSums);
+			iterations++;
+
+			// the rows sum to one exactly, so only the columns need checking
+			residual = 0.0;
+			for (int col = 0; col < n; col++)
+				residual = Math.max(residual, Math.abs(c[col] * colSums[col] - 1.0));
+
+			if (residual <= tolerance || iterations >= options.getMaxIterations())
+				break;
+
+			for (int col = 0; col < n; col++) {
+				if (colSums[col] == 0.0)
+					throw new BVNRuntimeException("Column " + col + " has no positive entries and cannot be balanced");
+
+				g[col] = -Math.log(colSums[col]);
+				f[col] = g[col] - x[col];
+			}
+
+			if (iterations > 1) {
+				for (int col = 0; col < n; col++) {
+					dg[next][col] = g[col] - prevG[col];
+					df[next][col] = f[col] - prevF[col];
+				}
+				next = (next + 1) % MEMORY;
+				history = Math.min(history + 1, MEMORY);
+			}
+
+			System.arraycopy(g, 0, prevG, 0, n);
+			System.arraycopy(f, 0, prevF, 0, n);
+
+			if (!extrapolate(x, g, f, dg, df, history)) {
+				history = 0;
+				System.arraycopy(g, 0, x, 0, n);
+			}
+		}
+
+		return new SinkhornResult(iterations, residual, residual <= tolerance, r, c);
+	}
+
+	/**
+	 * Sets x to g - dg * gamma, where gamma minimizes |f - df * gamma|.
+	 * 
+	 * @return false if there is no history, the least-squares system is singular, or the
+	 * result is not finite
+	 */
+	private static boolean extrapolate(double[] x, double[] g, double[] f, double[][] dg, double[][] df, int history) {
+		if (history == 0)
+			return false;
+
+		// the normal equations df^T df gamma = df^T f, with a little ridge regularization
+		double[][] a = new double[history][history];
+		double[] b = new double[history];
+		double trace = 0.0;
+		for (int i = 0; i < history; i++) {
+			for (int j = i; j < history; j++) {
+				a[i][j] = MatrixUtils.dot(df[i], df[j]);
+				a[j][i] = a[i][j];
+			}
+			b[i] = MatrixUtils.dot(df[i], f);
+			trace += a[i][i];
+		}
+
+		for (int i = 0; i < history; i++)
+			a[i][i] += 1e-10 * trace;
+
+		// near convergence the entries are tiny, so only an exactly zero pivot is singular
+		double[] gamma;
+		try {
+			gamma = new LUDecomposition(new Array2DRowRealMatrix(a, false), Double.MIN_NORMAL)
+					.getSolver().solve(new ArrayRealVector(b, false)).toArray();
+		} catch (SingularMatrixException e) {
+			return false;
+		}
+
+		for (int col = 0; col < x.length; col++) {
+			double v = g[col];
+			for (int i = 0; i < history; i++)
+				v -= gamma[i] * dg[i][col];
+
+			if (!Double.isFinite(v))
+				return false;
+
+			x[col] = v;
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,47 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+/**
+ * Solves the assignment problem: a minimum cost perfect matching between n rows and n
+ * columns, over a flat, row-major cost array.
+ * 
+ * Solvers keep state between calls so that a sequence of related problems (such as the
+ * steps of a GREEDY decomposition, where the costs only ever increase) is cheaper to
+ * solve than the same problems from scratch.
+ */
+interface AssignmentSolver {
+
+	/**
+	 * Finds a minimum cost assignment. The costs must be finite, and must be no lower than
+	 * the costs of the previous call, unless reset was called in between.
+	 * 
+	 * @param cost the n * n costs, row-major
+	 * @param out where to write the assignment: row i is assigned column out[i]
+	 */
+	void solve(double[] cost, int[] out);
+
+	/**
+	 * Forgets everything carried over from the last call, for costs that are unrelated to
+	 * the last call's.
+	 */
+	void reset();
+}
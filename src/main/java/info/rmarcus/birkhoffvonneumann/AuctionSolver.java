@@ -0,0 +1,277 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Solves the assignment problem with Bertsekas' auction algorithm, with epsilon-scaling
+ * and Jacobi (parallel) bidding.
+ * 
+ * Each column has a price. In every round, each unassigned row bids for the column j that
+ * maximizes -cost[i][j] - price[j], raising its price by the margin over the row's second
+ * best column plus epsilon, and the column's previous owner becomes unassigned. Every
+ * assignment satisfies epsilon-complementary slackness, so the result costs at most
+ * n * epsilon more than the optimum. Rounds with many bidders bid in parallel against the
+ * same prices (Jacobi bidding), and then give each column to its highest bidder. Smaller
+ * rounds bid one row at a time against the latest prices (Gauss-Seidel bidding), which
+ * wastes fewer bids on columns that another row has just taken.
+ * 
+ * Epsilon is scaled down from a fifth of the spread of the costs to the final epsilon,
+ * which is RELATIVE_ACCURACY / n times the smallest cost (when every cost is positive),
+ * so the assignment is within a factor 1 + RELATIVE_ACCURACY of the optimum. Unlike
+ * HungarianSolver, the result is not always exactly optimal. Scaling keeps price wars
+ * short: rows with several equally good columns (such as the many equal zero-entry costs
+ * late in a decomposition) would otherwise take turns outbidding each other by the
+ * final epsilon.
+ * 
+ * The prices and the assignment are kept between phases and between calls. Each phase
+ * only unassigns the rows whose column is no longer within epsilon of their best, so
+ * when the costs only increase, most rows keep their column and the phases are cheap.
+ *
+ */
+class AuctionSolver implements AssignmentSolver {
+	/**
+	 * How close to the optimum the assignment is, relative to its cost.
+	 */
+	static final double RELATIVE_ACCURACY = 1e-7;
+
+	/**
+	 * How much epsilon shrinks from one scaling phase to the next.
+	 */
+	private static final double SCALING_FACTOR = 5.0;
+
+	/**
+	 * Rounds with fewer bids times columns than this are bid on the calling thread.
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 15;
+
+	private final int n;
+	private final @Nullable ForkJoinPool pool;
+	private final double[] price;
+	private final int[] rowCol;
+	private final int[] colRow;
+	private final int[] bidCol;
+	private final double[] bid;
+	private final double[] bestBid;
+	private final int[] bestBidder;
+	private int[] bidders;
+	private int[] nextBidders;
+
+	/**
+	 * @param n the number of rows and columns
+	 * @param pool the pool to bid on, or null to always bid on the calling thread
+	 */
+	AuctionSolver(int n, @Nullable ForkJoinPool pool) {
+		this.n = n;
+		this.pool = pool;
+		price = new double[n];
+		rowCol = new int[n];
+		colRow = new int[n];
+		bidCol = new int[n];
+		bid = new double[n];
+		bestBid = new double[n];
+		bestBidder = new int[n];
+		bidders = new int[n];
+		nextBidders = new int[n];
+		reset();
+	}
+
+	@Override
+	public void solve(double[] cost, int[] out) {
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (double c : cost) {
+			min = Math.min(min, c);
+			max = Math.max(max, c);
+		}
+
+		double scale = (min > 0 ? min : max - min);
+		double finalEpsilon = RELATIVE_ACCURACY * (scale > 0 ? scale : 1.0) / Math.max(n, 1);
+
+		double epsilon = Math.max((max - min) / SCALING_FACTOR, finalEpsilon);
+		while (true) {
+			unassignSlackRows(cost, epsilon);
+			auction(cost, epsilon);
+
+			if (epsilon <= finalEpsilon)
+				break;
+			epsilon = Math.max(epsilon / SCALING_FACTOR, finalEpsilon);
+		}
+
+		System.arraycopy(rowCol, 0, out, 0, n);
+	}
+
+	/**
+	 * Unassigns the rows whose column is no longer within epsilon of their best column at
+	 * the current prices.
+	 */
+	private void unassignSlackRows(double[] cost, double epsilon) {
+		for (int row = 0; row < n; row++) {
+			int col = rowCol[row];
+			if (col < 0)
+				continue;
+
+			int base = row * n;
+			double best = Double.NEGATIVE_INFINITY;
+			for (int j = 0; j < n; j++)
+				best = Math.max(best, -cost[base + j] - price[j]);
+
+			if (-cost[base + col] - price[col] < best - epsilon) {
+				rowCol[row] = -1;
+				colRow[col] = -1;
+			}
+		}
+	}
+
+	private void auction(double[] cost, double epsilon) {
+		int count = 0;
+		for (int row = 0; row < n; row++) {
+			if (rowCol[row] < 0)
+				bidders[count++] = row;
+		}
+
+		while (count > 0) {
+			ForkJoinPool p = pool;
+			if (p == null || (long) count * n < PARALLEL_THRESHOLD)
+				count = gaussSeidelRound(cost, count, epsilon);
+			else
+				count = jacobiRound(cost, count, epsilon, p);
+
+			int[] tmp = bidders;
+			bidders = nextBidders;
+			nextBidders = tmp;
+		}
+	}
+
+	/**
+	 * Computes every bid of the round in parallel against the same prices, then gives each
+	 * column to its highest bidder. Rows that were outbid, or lost their column, bid in the
+	 * next round.
+	 * 
+	 * @return the number of rows left without a column
+	 */
+	private int jacobiRound(double[] cost, int bidding, double epsilon, ForkJoinPool p) {
+		p.submit(() -> IntStream.range(0, bidding).parallel()
+				.forEach(k -> bid(cost, bidders[k], epsilon))).join();
+
+		for (int k = 0; k < bidding; k++) {
+			int row = bidders[k];
+			int col = bidCol[row];
+			if (bestBidder[col] < 0 || bid[row] > bestBid[col]) {
+				bestBid[col] = bid[row];
+				bestBidder[col] = row;
+			}
+		}
+
+		int count = 0;
+		for (int k = 0; k < bidding; k++) {
+			int row = bidders[k];
+			int col = bidCol[row];
+			if (bestBidder[col] != row) {
+				nextBidders[count++] = row;
+				continue;
+			}
+
+			int previous = colRow[col];
+			if (previous >= 0) {
+				rowCol[previous] = -1;
+				nextBidders[count++] = previous;
+			}
+
+			price[col] = bestBid[col];
+			colRow[col] = row;
+			rowCol[row] = col;
+		}
+
+		for (int k = 0; k < bidding; k++)
+			bestBidder[bidCol[bidders[k]]] = -1;
+
+		return count;
+	}
+
+	/**
+	 * Lets each bidder bid in turn, assigning its column (and raising the price) right away,
+	 * so later bidders of the round see the new prices. Rows that lose their column bid in
+	 * the next round.
+	 * 
+	 * @return the number of rows that lost their column
+	 */
+	private int gaussSeidelRound(double[] cost, int bidding, double epsilon) {
+		int count = 0;
+		for (int k = 0; k < bidding; k++) {
+			int row = bidders[k];
+			bid(cost, row, epsilon);
+
+			int col = bidCol[row];
+			int previous = colRow[col];
+			if (previous >= 0) {
+				rowCol[previous] = -1;
+				nextBidders[count++] = previous;
+			}
+
+			price[col] = bid[row];
+			colRow[col] = row;
+			rowCol[row] = col;
+		}
+		return count;
+	}
+
+	/**
+	 * Finds the column a row bids for, and its bid. Only reads the prices, so the bids of a
+	 * round can be computed in parallel.
+	 */
+	private void bid(double[] cost, int row, double epsilon) {
+		int base = row * n;
+		double best = Double.NEGATIVE_INFINITY;
+		double second = Double.NEGATIVE_INFINITY;
+		int bestCol = 0;
+
+		for (int j = 0; j < n; j++) {
+			double value = -cost[base + j] - price[j];
+			if (value > best) {
+				second = best;
+				best = value;
+				bestCol = j;
+			} else if (value > second) {
+				second = value;
+			}
+		}
+
+		if (second == Double.NEGATIVE_INFINITY)
+			second = best;
+
+		bidCol[row] = bestCol;
+		bid[row] = price[bestCol] + (best - second) + epsilon;
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(price, 0.0);
+		Arrays.fill(rowCol, -1);
+		Arrays.fill(colRow, -1);
+		Arrays.fill(bestBidder, -1);
+	}
+}
@@ -21,19 +21,13 @@
 package info.rmarcus.birkhoffvonneumann;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.Nullable;
 
-import info.rmarcus.NullUtils;
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNException;
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNNonSquareMatrixException;
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
@@ -44,8 +38,20 @@ import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
  */
 public class BVNDecomposer {
 	public static final double EPSILON = 0.00001;
+	public static final long DEFAULT_TIME_BUDGET = 1000;
+	public static final int DEFAULT_CACHE_SIZE = 8;
 	private final DecompositionType type;
 	private SamplingAlgorithm sampling;
+	private MatchingEngine matching = MatchingEngine.NATIVE;
+	private long timeBudget = DEFAULT_TIME_BUDGET;
+	private Tolerance tolerance = Tolerance.DEFAULT;
+	private final DecompositionCache cache = new DecompositionCache(DEFAULT_CACHE_SIZE);
+	private final GibbsSampler gibbs = new GibbsSampler();
+	private final EntropySampler entropy = new EntropySampler();
+	private boolean persistentChain = false;
+	private int chains = Runtime.getRuntime().availableProcessors();
+	@Nullable private MetropolisHastingsChain chain;
+	@Nullable private Object chainMatrix;
 
 	public BVNDecomposer() {
 		type = DecompositionType.BVN;
@@ -83,8 +89,186 @@ public class BVNDecomposer {
 		if (matrix == null) {
 			throw new BVNNonSquareMatrixException();
 		}
-		BVNUtils.checkMatrixInput(matrix);
-		return new BVNIterator(matrix, type);
+		BVNUtils.checkMatrixInput(matrix, tolerance);
+		return new BVNIterator(SparseMatrix.fromDense(matrix), type, matching, timeBudget, tolerance.forSize(matrix.length));
+	}
+
+	/**
+	 * Produces a decomposition of a sparse matrix, in the same way as decomposeBistocastic
+	 * does for a dense one. The work done per permutation scales with the number of
+	 * non-zero entries of the matrix.
+	 * 
+	 * @param matrix the input matrix
+	 * @return an iterator over the permutations that compose the input matrix.
+	 * @throws BVNException if the matrix is not bistochastic
+	 */
+	public Iterator<@NonNull CoeffAndMatrix> decomposeBistocastic(SparseMatrix matrix) throws BVNException {
+		BVNUtils.checkMatrixInput(matrix, tolerance);
+		return new BVNIterator(matrix, type, matching, timeBudget, tolerance.forSize(matrix.size()));
+	}
+
+	/**
+	 * Produces a decomposition of a dense matrix, in the same way as decomposeBistocastic
+	 * does for a double[][]. The backing array is converted to the decomposer's sparse
+	 * form directly, without going through a double[][].
+	 * 
+	 * @param matrix the input matrix
+	 * @return an iterator over the permutations that compose the input matrix.
+	 * @throws BVNException if the matrix is not bistochastic
+	 */
+	public Iterator<@NonNull CoeffAndMatrix> decomposeBistocastic(DenseMatrix matrix) throws BVNException {
+		return decomposeBistocastic(SparseMatrix.fromDense(matrix));
+	}
+
+	/**
+	 * Produces a decomposition in the same way as decomposeBistocastic, but returns each
+	 * permutation as an array (row i maps to column perm[i]) instead of an n x n matrix.
+	 * 
+	 * @param matrix the input matrix
+	 * @return an iterator over the permutations that compose the input matrix.
+	 * @throws BVNException if the matrix is not square or if the matrix is not bistochastic
+	 */
+	public Iterator<@NonNull CoeffAndPermutation> decomposeToPermutations(double@Nullable[][] matrix) throws BVNException {
+		return asPermutations((BVNIterator) decomposeBistocastic(matrix));
+	}
+
+	/**
+	 * Produces a decomposition of a sparse matrix as permutation arrays.
+	 * 
+	 * @param matrix the input matrix
+	 * @return an iterator over the permutations that compose the input matrix.
+	 * @throws BVNException if the matrix is not bistochastic
+	 */
+	public Iterator<@NonNull CoeffAndPermutation> decomposeToPermutations(SparseMatrix matrix) throws BVNException {
+		return asPermutations((BVNIterator) decomposeBistocastic(matrix));
+	}
+
+	/**
+	 * Produces a decomposition of a dense matrix as permutation arrays.
+	 * 
+	 * @param matrix the input matrix
+	 * @return an iterator over the permutations that compose the input matrix.
+	 * @throws BVNException if the matrix is not bistochastic
+	 */
+	public Iterator<@NonNull CoeffAndPermutation> decomposeToPermutations(DenseMatrix matrix) throws BVNException {
+		return decomposeToPermutations(SparseMatrix.fromDense(matrix));
+	}
+
+	/**
+	 * Produces a decomposition in the same way as decomposeToPermutations, but stops as
+	 * soon as the stop policy says to: after a number of terms, once the residual mass
+	 * left to decompose is small enough, or once a time limit has passed. This bounds the
+	 * work spent on the tail terms of large matrices, which often carry very little mass.
+	 * 
+	 * @param matrix the input matrix
+	 * @param policy when to stop
+	 * @return the terms found, and their renormalized coefficients
+	 * @throws BVNException if the matrix is not square or if the matrix is not bistochastic
+	 */
+	public PartialDecomposition decomposePartial(double[][] matrix, StopPolicy policy) throws BVNException {
+		return decomposePartial(decomposeToPermutations(matrix), policy);
+	}
+
+	/**
+	 * Produces a partial decomposition of a sparse matrix, in the same way as
+	 * decomposePartial(double[][], StopPolicy).
+	 * 
+	 * @param matrix the input matrix
+	 * @param policy when to stop
+	 * @return the terms found, and their renormalized coefficients
+	 * @throws BVNException if the matrix is not bistochastic
+	 */
+	public PartialDecomposition decomposePartial(SparseMatrix matrix, StopPolicy policy) throws BVNException {
+		return decomposePartial(decomposeToPermutations(matrix), policy);
+	}
+
+	/**
+	 * Produces a partial decomposition of a dense matrix, in the same way as
+	 * decomposePartial(double[][], StopPolicy).
+	 * 
+	 * @param matrix the input matrix
+	 * @param policy when to stop
+	 * @return the terms found, and their renormalized coefficients
+	 * @throws BVNException if the matrix is not bistochastic
+	 */
+	public PartialDecomposition decomposePartial(DenseMatrix matrix, StopPolicy policy) throws BVNException {
+		return decomposePartial(decomposeToPermutations(matrix), policy);
+	}
+
+	private static PartialDecomposition decomposePartial(Iterator<CoeffAndPermutation> i, StopPolicy policy) {
+		long start = System.nanoTime();
+		List<CoeffAndPermutation> terms = new ArrayList<>();
+		double residual = 1.0;
+
+		while (i.hasNext()) {
+			if (policy.shouldStop(terms.size(), residual, (System.nanoTime() - start) / 1000000L))
+				return new PartialDecomposition(terms, false);
+
+			CoeffAndPermutation cap = i.next();
+			terms.add(cap);
+			residual -= cap.coeff;
+		}
+
+		return new PartialDecomposition(terms, true);
+	}
+
+	/**
+	 * Decomposes a matrix into a distribution that can be sampled from in O(1) time per
+	 * draw. Prepared distributions are cached by matrix identity: preparing the same
+	 * matrix again returns the cached distribution, unless the matrix has been modified
+	 * since.
+	 * 
+	 * @param matrix the input matrix
+	 * @return the prepared distribution
+	 * @throws BVNException if the matrix is not square or if the matrix is not bistochastic
+	 */
+	public PreparedDistribution prepare(double[][] matrix) throws BVNException {
+		@Nullable PreparedDistribution cached = cache.get(matrix);
+		if (cached != null)
+			return cached;
+
+		PreparedDistribution toR = new PreparedDistribution(collect(decomposeToPermutations(matrix)));
+		cache.put(matrix, toR);
+		return toR;
+	}
+
+	/**
+	 * Decomposes a sparse matrix into a distribution that can be sampled from in O(1)
+	 * time per draw, in the same way as prepare(double[][]).
+	 * 
+	 * @param matrix the input matrix
+	 * @return the prepared distribution
+	 * @throws BVNException if the matrix is not bistochastic
+	 */
+	public PreparedDistribution prepare(SparseMatrix matrix) throws BVNException {
+		@Nullable PreparedDistribution cached = cache.get(matrix);
+		if (cached != null)
+			return cached;
+
+		PreparedDistribution toR = new PreparedDistribution(collect(decomposeToPermutations(matrix)));
+		cache.put(matrix, toR);
+		return toR;
+	}
+
+	private static List<CoeffAndPermutation> collect(Iterator<CoeffAndPermutation> i) {
+		List<CoeffAndPermutation> toR = new ArrayList<>();
+		while (i.hasNext())
+			toR.add(i.next());
+		return toR;
+	}
+
+	private static Iterator<@NonNull CoeffAndPermutation> asPermutations(BVNIterator i) {
+		return new Iterator<@NonNull CoeffAndPermutation>() {
+			@Override
+			public boolean hasNext() {
+				return i.hasNext();
+			}
+
+			@Override
+			public CoeffAndPermutation next() {
+				return i.nextPermutation();
+			}
+		};
 	}
 
 	/**
@@ -96,10 +280,80 @@ public class BVNDecomposer {
 	 * @throws BVNException if the matrix is not square, bistochastic, or r is not between 0 and 1
 	 */
 	public double[][] sample(Random r, double[][] matrix) throws BVNException {
+		return CoeffAndMatrix.fromFlatPerm(samplePermutation(r, matrix));
+	}
+
+	/**
+	 * Randomly samples many permutations from the same matrix. With the DECOMPOSITION
+	 * sampling algorithm, the matrix is decomposed once (see prepare) and every sample is
+	 * drawn from the prepared distribution, instead of decomposing the matrix once per sample.
+	 * With METROPOLIS_HASTINGS sampling, the samples are drawn from several chains running
+	 * in parallel (see setChains).
+	 * 
+	 * @param r a random number generator
+	 * @param matrix the matrix to sample from
+	 * @param count the number of samples to draw
+	 * @return count permutation arrays (row i maps to column perm[i])
+	 * @throws BVNException if the matrix is not square or bistochastic, or count is negative
+	 */
+	public int[][] sample(Random r, double[][] matrix, int count) throws BVNException {
+		if (sampling == SamplingAlgorithm.DECOMPOSITION)
+			return sampleFromDistribution(r, prepare(matrix), count);
+
+		if (count < 0)
+			throw new BVNException("count must be non-negative!");
+
+		if (sampling == SamplingAlgorithm.METROPOLIS_HASTINGS && !persistentChain)
+			return new MultiChainSampler(matrix, chains, r.nextLong()).sample(count);
+
+		int[][] toR = new int[count][];
+		for (int s = 0; s < count; s++)
+			toR[s] = samplePermutation(r, matrix);
+
+		return toR;
+	}
+
+	/**
+	 * Randomly samples many permutations from the same sparse matrix, in the same way as
+	 * sample(Random, double[][], int).
+	 * 
+	 * @param r a random number generator
+	 * @param matrix the matrix to sample from
+	 * @param count the number of samples to draw
+	 * @return count permutation arrays (row i maps to column perm[i])
+	 * @throws BVNException if the matrix is not bistochastic, or count is negative
+	 */
+	public int[][] sample(Random r, SparseMatrix matrix, int count) throws BVNException {
+		if (sampling == SamplingAlgorithm.DECOMPOSITION)
+			return sampleFromDistribution(r, prepare(matrix), count);
+
+		if (count < 0)
+			throw new BVNException("count must be non-negative!");
+
+		if (sampling == SamplingAlgorithm.METROPOLIS_HASTINGS && !persistentChain)
+			return new MultiChainSampler(matrix, chains, r.nextLong()).sample(count);
+
+		int[][] toR = new int[count][];
+		for (int s = 0; s < count; s++)
+			toR[s] = samplePermutation(r, matrix);
+
+		return toR;
+	}
+
+	/**
+	 * Randomly samples a permutation from the decomposition, returned as a permutation
+	 * array (row i maps to column perm[i]).
+	 * 
+	 * @param r a random number generator
+	 * @param matrix the matrix to decompose
+	 * @return a sample permutation from the matrix
+	 * @throws BVNException if the matrix is not square, bistochastic, or r is not between 0 and 1
+	 */
+	public int[] samplePermutation(Random r, double[][] matrix) throws BVNException {
 		// TODO this check is too expensive: BVNUtils.checkMatrixInput(matrix);
 		switch (sampling) {
 		case DECOMPOSITION:
-			return sampleFromDecomposition(r, matrix);
+			return prepare(matrix).samplePermutation(r);
 		case ENTROPY:
 			return sampleFromEntropyMethod(r, matrix);
 		case GIBBS:
@@ -107,172 +361,134 @@ public class BVNDecomposer {
 		case METROPOLIS_HASTINGS:
 			return sampleFromMetropolisHastingsMethod(r, matrix);
 		case UNIFORM:
-			return MatrixUtils.randomPermutation(r, matrix.length);
+			return MatrixUtils.randomPermutationSparse(r, matrix.length);
 		default:
 			throw new BVNException("No support for selected sampling method: " + sampling);
 		}
 	}
 
-	private double[][] sampleFromMetropolisHastingsMethod(Random r, double[][] matrix) throws BVNException {
-		return MetropolisHastings.generateSample(r, matrix);
-	}
-
-	private double[][] sampleFromGibbsMethod(Random r, double[][] matrix) throws BVNException {
-		double[][] toR = new double[matrix.length][matrix.length];
-
-		List<Integer> rowOrder = IntStream.range(0, matrix.length)
-				.mapToObj(i -> i)
-				.collect(Collectors.toCollection(() -> new ArrayList<Integer>()));
-		
-		Collections.shuffle(rowOrder, r);
-		
-		
-		boolean[] removedCols = new boolean[matrix.length];
-		
-		double[] rowSums = new double[matrix.length];
-		for (int i = 0; i < matrix.length; i++)
-			rowSums[i] = 1.0;
-		
-		for (int rowIdx = 0; rowIdx < matrix.length; rowIdx++) {
-			int selectedRow = rowOrder.get(rowIdx);
-			
-			// we now have the index of the row. get
-			// the remaining mass from the columns still available
-			double remainingMass = rowSums[selectedRow];
-			
-			// roll a random number between 0 and 1 and select accordingly
-			double v = r.nextDouble();
-			int bestColIdx = -1;
-			for (int col = 0; col < matrix.length; col++) {
-				if (removedCols[col])
-					continue;
-				
-				v -= matrix[selectedRow][col] / remainingMass;
-				if (v <= 0) {
-					bestColIdx = col;
-					break;
-				}
-			}
-			
-			if (bestColIdx == -1)
-				throw new BVNException("Unable to sample a row up to mass " + v);
-			
-
-			// update the row sums
-			for (int idxToUpdate = rowIdx+1; idxToUpdate < matrix.length; idxToUpdate++) {
-				int rowToUpdate = rowOrder.get(idxToUpdate);
-				rowSums[rowToUpdate] -= matrix[rowToUpdate][bestColIdx];
-			}
-			
-			removedCols[bestColIdx] = true;
-						
-			toR[selectedRow][bestColIdx] = 1.0;
+	/**
+	 * Randomly samples a permutation in the same way as samplePermutation(Random, double[][]),
+	 * but writes it into an array supplied by the caller. With GIBBS or ENTROPY sampling, this
+	 * does not allocate any memory, so it is the cheapest way to draw many samples from matrices that
+	 * change between draws.
+	 * 
+	 * @param r a random number generator
+	 * @param matrix the matrix to sample from
+	 * @param out an array of length at least n that receives the sample
+	 * @throws BVNException if the matrix is not square, bistochastic, or a sample could not be drawn
+	 */
+	public void samplePermutation(Random r, double[][] matrix, int[] out) throws BVNException {
+		if (out.length < matrix.length)
+			throw new BVNException("Output array is shorter than the matrix");
+
+		switch (sampling) {
+		case GIBBS:
+			gibbs.sample(r, matrix, out);
+			return;
+		case ENTROPY:
+			entropy.sample(r, matrix, out);
+			return;
+		default:
+			break;
 		}
-		
-		return toR;
+
+		System.arraycopy(samplePermutation(r, matrix), 0, out, 0, matrix.length);
 	}
 
-	private double[][] sampleFromEntropyMethod(Random r, double[][] matrix) throws BVNException {
-		double[][] toR = new double[matrix.length][matrix.length];
-
-		Set<Integer> removedRows = new HashSet<>();
-		Set<Integer> removedCols = new HashSet<>();
-		while(removedRows.size() != matrix.length) {
-			// find the entropy of each row
-			double[] ent = new double[matrix.length];
-			for (int row = 0; row < matrix.length; row++) {
-				if (removedRows.contains(row))
-					continue;
-				
-				for (int col = 0; col < matrix.length; col++) {
-					if (removedCols.contains(col))
-						continue;
-					
-					ent[row] += matrix[row][col] * Math.log(matrix[row][col]);
-				}
-			}
-			
-			// find the smallest entry in ent, excluding removed rows.
-			int bestIdx = -1;
-			for (int row = 0; row < matrix.length; row++) {
-				if (removedRows.contains(row))
-					continue;
-				
-				if (bestIdx == -1 || ent[bestIdx] > ent[row])
-					bestIdx = row;
-			}
-			
-			// we now have the index of the best row. Calculate
-			// the remaining mass from the columns still available
-			double remainingMass = 0.0;
-			for (int col = 0; col < matrix.length; col++) {
-				if (removedCols.contains(col))
-					continue;
-				
-				remainingMass += matrix[bestIdx][col];
-			}
-			
-			// roll a random number between 0 and 1 and select accordingly
-			double v = r.nextDouble();
-			int bestColIdx = -1;
-			for (int col = 0; col < matrix.length; col++) {
-				if (removedCols.contains(col))
-					continue;
-				
-				v -= matrix[bestIdx][col] / remainingMass;
-				if (v <= 0) {
-					bestColIdx = col;
-					break;
-				}
-			}
-			
-			if (bestColIdx == -1)
-				throw new BVNException("Unable to sample a row up to mass " + v);
-						
-			removedRows.add(bestIdx);
-			removedCols.add(bestColIdx);
-			toR[bestIdx][bestColIdx] = 1.0;
+	/**
+	 * Randomly samples a permutation from a sparse matrix. Every sampling algorithm
+	 * only visits the non-zero entries of the matrix.
+	 * 
+	 * @param r a random number generator
+	 * @param matrix the matrix to sample from
+	 * @return a sample permutation from the matrix
+	 * @throws BVNException if the matrix is not bistochastic or a sample could not be drawn
+	 */
+	public int[] samplePermutation(Random r, SparseMatrix matrix) throws BVNException {
+		switch (sampling) {
+		case DECOMPOSITION:
+			return prepare(matrix).samplePermutation(r);
+		case ENTROPY:
+			return sampleFromEntropyMethod(r, matrix);
+		case GIBBS:
+			return sampleFromGibbsMethod(r, matrix);
+		case METROPOLIS_HASTINGS:
+			return sampleFromMetropolisHastingsMethod(r, matrix);
+		case UNIFORM:
+			return MatrixUtils.randomPermutationSparse(r, matrix.size());
+		default:
+			throw new BVNException("No support for selected sampling method: " + sampling);
 		}
-		
-		return toR;
 	}
 
-	private double[][] sampleFromDecomposition(Random r, double[][] matrix) throws BVNException {
-		Iterator<CoeffAndMatrix> i = sampleUntil(r.nextDouble(), matrix);
-		@Nullable CoeffAndMatrix cam = null;
-		while (i.hasNext())
-			cam = i.next();
-
-		if (cam == null) 
-			throw new BVNException("Could not sample up to " + r + " density.");
+	private int[] sampleFromMetropolisHastingsMethod(Random r, double[][] matrix) throws BVNException {
+		if (!persistentChain)
+			return MetropolisHastings.generateSample(r, matrix);
+
+		@Nullable MetropolisHastingsChain c = chain;
+		if (c == null || chainMatrix != matrix) {
+			c = new MetropolisHastingsChain(matrix, r.nextLong());
+			chain = c;
+			chainMatrix = matrix;
+		} else {
+			// the matrix may have been modified in place since the last sample
+			c.setMatrix(matrix);
+		}
 
-		return cam.matrix;
+		return c.next();
 	}
 
-	private Iterator<CoeffAndMatrix> sampleUntil(double r, double[][] matrix) throws BVNException {
-		if (r < 0.0 || r > 1.0)
-			throw new BVNException("r must be between 0 and 1!");
+	private int[] sampleFromMetropolisHastingsMethod(Random r, SparseMatrix matrix) throws BVNException {
+		if (!persistentChain)
+			return MetropolisHastings.generateSample(r, matrix);
+
+		@Nullable MetropolisHastingsChain c = chain;
+		if (c == null || chainMatrix != matrix) {
+			c = new MetropolisHastingsChain(matrix, r.nextLong());
+			chain = c;
+			chainMatrix = matrix;
+		} else {
+			// the values may have been modified in place since the last sample
+			c.setMatrix(matrix);
+		}
 
-		return new Iterator<CoeffAndMatrix>() {
-			double left = r;
-			final Iterator<CoeffAndMatrix> i = decomposeBistocastic(matrix);
+		return c.next();
+	}
 
+	private int[] sampleFromGibbsMethod(Random r, double[][] matrix) throws BVNException {
+		int[] toR = new int[matrix.length];
+		gibbs.sample(r, matrix, toR);
+		return toR;
+	}
 
-			@Override
-			public boolean hasNext() {
-				return left > 0;
-			}
+	private int[] sampleFromGibbsMethod(Random r, SparseMatrix matrix) throws BVNException {
+		int[] toR = new int[matrix.size()];
+		gibbs.sample(r, matrix, toR);
+		return toR;
+	}
 
-			@Override
-			public CoeffAndMatrix next() {
-				CoeffAndMatrix toR = NullUtils.orThrow(i.next(), () -> new BVNRuntimeException("Got a null value from the decomposition iterator!"));
-				left -= toR.coeff;
-				return toR;
-			}
+	private int[] sampleFromEntropyMethod(Random r, double[][] matrix) throws BVNException {
+		int[] toR = new int[matrix.length];
+		entropy.sample(r, matrix, toR);
+		return toR;
+	}
 
-		};
+	private int[] sampleFromEntropyMethod(Random r, SparseMatrix matrix) throws BVNException {
+		int[] toR = new int[matrix.size()];
+		entropy.sample(r, matrix, toR);
+		return toR;
+	}
+
+	private static int[][] sampleFromDistribution(Random r, PreparedDistribution dist, int count) throws BVNException {
+		if (count < 0)
+			throw new BVNException("count must be non-negative!");
 
+		int[][] toR = new int[count][];
+		for (int s = 0; s < count; s++)
+			toR[s] = dist.samplePermutation(r);
 
+		return toR;
 	}
 
 	/**
@@ -295,6 +511,87 @@ public class BVNDecomposer {
 		this.sampling = sa;
 	}
 
+	/**
+	 * Sets the bipartite matching implementation used by BVN and GREEDY decompositions
+	 * and by meanPermutation. The default, NATIVE, works directly on primitive arrays;
+	 * JGRAPHT is slower and is only kept as a fallback. AUCTION only changes meanPermutation:
+	 * it can be faster for the means of very large matrices, but is only epsilon-optimal,
+	 * and GREEDY decompositions keep using NATIVE because the auction is slower for them.
+	 * @param me the matching engine
+	 */
+	public void setMatchingEngine(MatchingEngine me) {
+		this.matching = me;
+	}
+
+	/**
+	 * Sets the tolerance used to check that input matrices are bistochastic, and below
+	 * which the entries of the residual matrix count as zero during a decomposition. A
+	 * looser tolerance (or a relative part, for large matrices) stops floating-point drift
+	 * from turning into many tiny trailing terms. Defaults to Tolerance.DEFAULT. Changing
+	 * the tolerance empties the cache of prepared distributions.
+	 * @param tolerance the tolerance
+	 */
+	public void setTolerance(Tolerance tolerance) {
+		this.tolerance = tolerance;
+		cache.clear();
+	}
+
+	public Tolerance getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Sets how long a PERFECT decomposition may search for a decomposition with fewer
+	 * permutations. This is a cap: the search usually stops earlier, once its randomized
+	 * restarts stop finding shorter decompositions. The search always finishes at least one
+	 * decomposition unless the budget runs out first, in which case the permutations are
+	 * found with the BVN method instead.
+	 * @param millis the time budget, in milliseconds
+	 */
+	public void setTimeBudget(long millis) {
+		this.timeBudget = millis;
+	}
+
+	/**
+	 * Sets whether METROPOLIS_HASTINGS sampling keeps its Markov chain between calls. When
+	 * it does, sampling the same matrix again continues the previous chain for a few steps
+	 * instead of burning in a new one, which is much faster, but consecutive samples are
+	 * correlated. Defaults to false, where every sample comes from a fresh chain.
+	 * @param persistent true to keep the chain between calls
+	 */
+	public void setPersistentChain(boolean persistent) {
+		this.persistentChain = persistent;
+		if (!persistent) {
+			chain = null;
+			chainMatrix = null;
+		}
+	}
+
+	/**
+	 * Sets how many Metropolis-Hastings chains batch sampling runs in parallel. Defaults
+	 * to the number of available processors.
+	 * @param chains the number of chains
+	 */
+	public void setChains(int chains) {
+		if (chains < 1)
+			throw new BVNRuntimeException("Need at least one chain");
+		this.chains = chains;
+	}
+
+	/**
+	 * Sets how many prepared distributions this decomposer keeps. When the cache is full,
+	 * the least recently used distribution is dropped. A size of zero disables caching.
+	 * 
+	 * Each cached distribution holds a copy of its matrix's values, as well as its
+	 * decomposition, so a full cache of n x n matrices keeps up to size copies of n^2 values.
+	 * The matrices themselves are only weakly held: once the caller drops one, its entry is
+	 * freed too.
+	 * @param size the maximum number of cached distributions
+	 */
+	public void setCacheSize(int size) {
+		cache.setCapacity(size);
+	}
+
 
 
 }
@@ -22,12 +22,13 @@ package info.rmarcus.birkhoffvonneumann;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Supplier;
 
 import org.eclipse.jdt.annotation.NonNull;
@@ -46,15 +47,55 @@ import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
 
 
 public class BVNIterator implements Iterator<CoeffAndMatrix> {
-	private final double[][] matrix;
+	private final int n;
+	private final SparseMatrix support;
+	private final double[] values;
 	private final DecompositionType type;
+	private final MatchingEngine engine;
+	private final BipartiteMatcher matcher;
+	private final IndexedMinHeap nonZeros;
+	private final long timeBudget;
+	private final double epsilon;
+	@Nullable private Iterator<int[]> perfectPerms = null;
+
+	// GREEDY steps and getMean solve an assignment problem over a dense cost matrix,
+	// which is only allocated once one of them is used
+	@Nullable private AssignmentSolver assignment = null;
+	private double @Nullable [] assignmentCost = null;
 
-	BVNIterator(double[][] matrix, DecompositionType t) {
-		this.matrix = new double[matrix.length][matrix[0].length];
-		for (int i = 0; i < matrix.length; i++)
-			this.matrix[i] = Arrays.copyOf(matrix[i], matrix[i].length);
+	/**
+	 * @param epsilon residual entries at or below this value are treated as zero
+	 */
+	BVNIterator(SparseMatrix matrix, DecompositionType t, MatchingEngine engine, long timeBudget, double epsilon) {
+		// the residual matrix is stored as one value per entry of the (sparse) input,
+		// so all of the work below scales with the number of non-zero entries.
+		n = matrix.size();
+		support = matrix;
+		values = new double[matrix.getNonZeroCount()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = matrix.getValue(i);
 		
 		type = t;
+		this.engine = engine;
+		this.timeBudget = timeBudget;
+		this.epsilon = epsilon;
+
+		// there is an edge between row A and column B iff matrix[A][B] is non-zero.
+		// The graph is built once: after each step only the entries that were zeroed
+		// out lose their edges, and the previous matching is repaired around them.
+		// The non-zero entries are also kept in a heap keyed by their value (indexed
+		// by their position in the sparse matrix) so the smallest one is always available.
+		matcher = new BipartiteMatcher(n, values.length);
+		nonZeros = new IndexedMinHeap(values.length);
+		for (int row = 0; row < n; row++) {
+			matcher.beginRow(row);
+			for (int i = support.getRowStart(row); i < support.getRowEnd(row); i++) {
+				if (Math.abs(values[i] - 0) > epsilon) {
+					matcher.addEdge(row, support.getColumn(i));
+					nonZeros.put(i, values[i]);
+				}
+			}
+		}
 	}
 
 	/**
@@ -70,18 +111,35 @@ public class BVNIterator implements Iterator<CoeffAndMatrix> {
 	 * @return the mean permutation
 	 */
 	public double[][] getMean() {
-		return getNextPermGreedy();
+		if (engine == MatchingEngine.AUCTION) {
+			// a single large solve is where bidding in parallel pays off
+			int[] toR = new int[n];
+			new AuctionSolver(n, ForkJoinPool.commonPool()).solve(getAssignmentCost(), toR);
+			return CoeffAndMatrix.fromFlatPerm(toR);
+		}
+
+		return CoeffAndMatrix.fromFlatPerm(getNextPermGreedy());
 	}
 
 	@Override
 	public boolean hasNext() {
-		return findSmallestNonZero(matrix) != null;
+		return !nonZeros.isEmpty();
 	}
 
 	@Override
 	@NonNull
 	public CoeffAndMatrix next() {
-		final Supplier<double[][]> nextFunc;
+		return nextPermutation().asCoeffAndMatrix();
+	}
+
+	/**
+	 * Returns the next term of the decomposition as a permutation array, without
+	 * materializing the n x n permutation matrix.
+	 * 
+	 * @return the next coefficient and permutation
+	 */
+	public CoeffAndPermutation nextPermutation() {
+		final Supplier<int[]> nextFunc;
 		switch (type) {
 		case BVN:
 			nextFunc = this::getNextPermBVN;
@@ -90,38 +148,92 @@ public class BVNIterator implements Iterator<CoeffAndMatrix> {
 			nextFunc = this::getNextPermGreedy;
 			break;
 		case PERFECT:
-			throw new BVNRuntimeException("Not yet implemented!"); //TODO
+			nextFunc = this::getNextPermPerfect;
+			break;
 		default:
 			throw new BVNRuntimeException("Not yet implemented!"); //TODO
 		}
 		
-		double[][] perm = nextFunc.get();
-		double[][] tmp = new double[perm.length][perm.length];
-		MatrixUtils.multiply(tmp, matrix, perm);
-		
-		double coeff = Arrays.stream(tmp)
-				.flatMapToDouble(Arrays::stream)
-				.filter(d -> d > BVNDecomposer.EPSILON)
-				.min().orElseThrow(NoSuchElementException::new);
-		
-		// subtract coeff * perm from this.matrix
-		for (int row = 0; row < matrix.length; row++) {
-			for (int col = 0; col < matrix[row].length; col++) {
-				matrix[row][col] -= coeff * perm[row][col];
+		int[] perm = nextFunc.get();
 
-				if (matrix[row][col] < BVNDecomposer.EPSILON)
-					matrix[row][col] = 0;
+		double coeff = Double.POSITIVE_INFINITY;
+		for (int row = 0; row < perm.length; row++) {
+			int i = support.indexOf(row, perm[row]);
+			if (i >= 0 && values[i] > epsilon)
+				coeff = Math.min(coeff, values[i]);
+		}
 
+		if (coeff == Double.POSITIVE_INFINITY)
+			throw new NoSuchElementException();
+		
+		// subtract coeff * perm from the residual matrix. Entries that are not stored
+		// are zero, and stay zero.
+		double @Nullable [] cost = assignmentCost;
+		for (int row = 0; row < perm.length; row++) {
+			int i = support.indexOf(row, perm[row]);
+			if (i < 0)
+				continue;
+
+			values[i] -= coeff;
+
+			if (values[i] < epsilon) {
+				values[i] = 0;
+				matcher.removeEdge(row, perm[row]);
+				nonZeros.remove(i);
+			} else if (nonZeros.contains(i)) {
+				nonZeros.put(i, values[i]);
 			}
+
+			if (cost != null)
+				cost[row * n + perm[row]] = costOf(values[i]);
 		}
 
+		return new CoeffAndPermutation(coeff, perm);
+
+	}
+
+	private int[] getNextPermPerfect() {
+		@Nullable Iterator<int[]> perms = perfectPerms;
+		if (perms == null) {
+			// search for the whole decomposition up front. Replaying its permutations
+			// here performs exactly the same subtractions the search did.
+			@Nullable List<int[]> found = new PerfectDecomposer(support, values, epsilon).decompose(timeBudget);
+			perms = (found == null ? Collections.<int[]>emptyIterator() : found.iterator());
+			perfectPerms = perms;
+		}
 
-		return new CoeffAndMatrix(coeff, perm);
+		if (perms.hasNext())
+			return NullUtils.orThrow(perms.next(), () -> new BVNRuntimeException("Null permutation in decomposition"));
 
+		// the time budget ran out before any decomposition was finished
+		return getNextPermBVN();
 	}
 
-	private double[][] getNextPermBVN() {
-		Index edgeToForce = NullUtils.orThrow(findSmallestNonZero(matrix), () -> new NoSuchElementException());
+	private int[] getNextPermBVN() {
+		if (engine == MatchingEngine.JGRAPHT)
+			return getNextPermBVNJGraphT();
+
+		// force the edge that corresponds to the smallest non-zero entry. Keep
+		// the matching from the previous step, which only lost the edges that
+		// were zeroed out, and repair it around the forced edge.
+		int edgeToForce = findSmallestNonZero();
+		matcher.force(rowOf(edgeToForce), support.getColumn(edgeToForce));
+		matcher.repair();
+		matcher.release();
+
+		int[] toR = new int[n];
+		for (int row = 0; row < n; row++)
+			toR[row] = matcher.getMatchedColumn(row);
+
+		completePermutation(toR);
+		return toR;
+	}
+
+	private int[] getNextPermBVNJGraphT() {
+		int edgeToForce = findSmallestNonZero();
+		int forcedRow = rowOf(edgeToForce);
+		int forcedCol = support.getColumn(edgeToForce);
+		double[][] matrix = getResidual();
 
 		UndirectedGraph<LabeledInt, DefaultEdge> g =
 				new SimpleGraph<>(DefaultEdge.class);
@@ -150,8 +262,8 @@ public class BVNIterator implements Iterator<CoeffAndMatrix> {
 			for (int col = 0; col < matrix[row].length; col++) {
 				// if the entry is zero, ignore it.
 				// only include the forced edge from the edgeToForce.row row.
-				if ((Math.abs(matrix[row][col] - 0) <= BVNDecomposer.EPSILON)
-						|| (row == edgeToForce.row && col != edgeToForce.col))
+				if ((Math.abs(matrix[row][col] - 0) <= epsilon)
+						|| (row == forcedRow && col != forcedCol))
 					continue;
 
 				g.addEdge(new LabeledInt(row, true), new LabeledInt(col, false));
@@ -160,18 +272,99 @@ public class BVNIterator implements Iterator<CoeffAndMatrix> {
 		}
 
 		Set<DefaultEdge> matching = (new HopcroftKarpBipartiteMatching<LabeledInt, DefaultEdge>(g, p1, p2)).getMatching();
-		double[][] toR = new double[matrix.length][matrix.length];
+		int[] toR = new int[matrix.length];
+		Arrays.fill(toR, -1);
 
 		for (DefaultEdge de : matching) {
 			int row = NullUtils.orThrow(g.getEdgeSource(de), () -> new BVNRuntimeException("Null row value in matching")).i;
 			int col = NullUtils.orThrow(g.getEdgeTarget(de), () -> new BVNRuntimeException("Null col value in matching")).i;
-			toR[row][col] = 1;
+			toR[row] = col;
 		}
 
+		completePermutation(toR);
 		return toR;
 	}
+
+	/**
+	 * Once only floating point dust is left in the matrix, the support may no longer
+	 * contain a perfect matching. Rows left unmatched are assigned the remaining columns
+	 * in order; those entries are zero, so they do not affect the coefficient.
+	 * 
+	 * @param perm a partial permutation, with -1 for unmatched rows
+	 */
+	static void completePermutation(int[] perm) {
+		if (Arrays.stream(perm).allMatch(col -> col >= 0))
+			return;
+
+		boolean[] used = new boolean[perm.length];
+		for (int col : perm) {
+			if (col >= 0)
+				used[col] = true;
+		}
+
+		int nextCol = 0;
+		for (int row = 0; row < perm.length; row++) {
+			if (perm[row] >= 0)
+				continue;
+
+			while (used[nextCol])
+				nextCol++;
+
+			perm[row] = nextCol;
+			used[nextCol] = true;
+		}
+	}
 	
-	private double[][] getNextPermGreedy() {
+	private int[] getNextPermGreedy() {
+		if (engine == MatchingEngine.JGRAPHT)
+			return getNextPermGreedyJGraphT();
+
+		// GREEDY steps always use the exact solver: AUCTION is slower here, even warm
+		// started, and its epsilon-optimal answers could pick different permutations.
+		@Nullable AssignmentSolver solver = assignment;
+		if (solver == null) {
+			solver = new HungarianSolver(n);
+			assignment = solver;
+		}
+
+		// the residual only shrinks, so the costs only grow, and the solver's potentials
+		// and most of its matching stay valid from one step to the next. nextPermutation
+		// keeps the costs up to date.
+		int[] toR = new int[n];
+		solver.solve(getAssignmentCost(), toR);
+		return toR;
+	}
+
+	private double[] getAssignmentCost() {
+		double @Nullable [] cost = assignmentCost;
+		if (cost != null)
+			return cost;
+
+		cost = new double[n * n];
+		assignmentCost = cost;
+
+		Arrays.fill(cost, costOf(0.0));
+		for (int row = 0; row < n; row++) {
+			for (int i = support.getRowStart(row); i < support.getRowEnd(row); i++)
+				cost[row * n + support.getColumn(i)] = costOf(values[i]);
+		}
+
+		return cost;
+	}
+
+	/**
+	 * The most likely permutation maximizes the product of its entries. As in the jgrapht
+	 * version, each entry m costs 1/m, and zero entries cost more than any permutation of
+	 * non-zero entries can, so they are only used when they must be. Entries above epsilon
+	 * cost less than 1/epsilon, so (n + 1)/epsilon is enough.
+	 */
+	private double costOf(double value) {
+		return (value > epsilon ? 1.0 / value : (n + 1) / epsilon);
+	}
+
+	private int[] getNextPermGreedyJGraphT() {
+		double[][] matrix = getResidual();
+
 		WeightedGraph<@Nullable LabeledInt, @Nullable DefaultWeightedEdge> g =
 				new SimpleWeightedGraph<>(DefaultWeightedEdge.class);
 
@@ -202,7 +395,7 @@ public class BVNIterator implements Iterator<CoeffAndMatrix> {
 				// but we want a maximal matching and we know all the weights will be between 0 and 1
 				
 				// if the entry is zero, ignore it.
-				if (Math.abs(matrix[row][col] - 0) <= BVNDecomposer.EPSILON) {
+				if (Math.abs(matrix[row][col] - 0) <= epsilon) {
 					g.setEdgeWeight(de, Double.MAX_VALUE);
 				} else {
 					g.setEdgeWeight(de, 1.0/matrix[row][col]); 
@@ -221,35 +414,47 @@ public class BVNIterator implements Iterator<CoeffAndMatrix> {
 			throw new BVNRuntimeException("Unable to compute matching");
 		}
 		
-		double[][] toR = new double[matrix.length][matrix.length];
+		int[] toR = new int[matrix.length];
 
 		for (DefaultWeightedEdge de : matching) {
 			int row = NullUtils.orThrow(g.getEdgeSource(de), () -> new BVNRuntimeException("Null row value in matching")).i;
 			int col = NullUtils.orThrow(g.getEdgeTarget(de), () -> new BVNRuntimeException("Null col value in matching")).i;
-			toR[row][col] = 1;
+			toR[row] = col;
 		}
 
 		return toR;
 	}
 
-	@Nullable
-	private Index findSmallestNonZero(double[][] matrix) {
-		Map<Index, Double> nonZeros = new HashMap<>();
-		for (int row = 0; row < matrix.length; row++) {
-			for (int col = 0; col < matrix[row].length; col++) {
-				if (Math.abs(matrix[row][col] - 0) > BVNDecomposer.EPSILON)
-					nonZeros.put(new Index(row, col), matrix[row][col]);
+	/**
+	 * @return the remaining (not yet decomposed) part of the matrix, as a dense matrix
+	 */
+	private double[][] getResidual() {
+		double[][] toR = new double[n][n];
+		for (int row = 0; row < n; row++)
+			for (int i = support.getRowStart(row); i < support.getRowEnd(row); i++)
+				toR[row][support.getColumn(i)] = values[i];
+
+		return toR;
+	}
+
+	private int rowOf(int entry) {
+		// binary search for the row whose range contains the entry
+		int lo = 0;
+		int hi = n - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (support.getRowStart(mid) <= entry) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
 			}
 		}
-		
-		return NullUtils.deoptional(nonZeros.keySet().stream()
-				.min((a, b) -> (int)Math.signum(
-						NullUtils.orThrow(nonZeros.get(a), () -> new BVNRuntimeException("Keyset object no longer in map!"))
-						-
-						NullUtils.orThrow(nonZeros.get(b), () -> new BVNRuntimeException("Keyset object no longer in map!")))));
-		
-		
-				
+		return lo;
+	}
+
+	private int findSmallestNonZero() {
+		// throws NoSuchElementException if every entry is zero
+		return nonZeros.peek();
 	}
 
 	private class LabeledInt {
@@ -280,18 +485,4 @@ public class BVNIterator implements Iterator<CoeffAndMatrix> {
 			return "(" + i + ", " + label + ")";
 		}
 	}
-
-	private class Index {
-		public final int row;
-		public final int col;
-		public Index(int row, int col) {
-			this.row = row;
-			this.col = col;
-		}
-
-		@Override
-		public String toString() {
-			return "(" + row + "," + col + ")";
-		}
-	}
 }
@@ -43,15 +43,49 @@ public class BVNUtils {
 	}
 
 	public static void checkMatrixInput(double[][] matrix) throws BVNNonSquareMatrixException, BVNNonBistochasticMatrixException {
+		checkMatrixInput(matrix, Tolerance.DEFAULT);
+	}
+
+	/**
+	 * Checks that a matrix is square and bistochastic, to within a tolerance.
+	 * 
+	 * @param matrix the matrix to check
+	 * @param tolerance how far each row and column sum may be from one
+	 * @throws BVNNonSquareMatrixException if the matrix is not square
+	 * @throws BVNNonBistochasticMatrixException if the matrix is not bistochastic
+	 */
+	public static void checkMatrixInput(double[][] matrix, Tolerance tolerance) throws BVNNonSquareMatrixException, BVNNonBistochasticMatrixException {
 
 		checkSquare(matrix);
 
-		if (!isBistochastic(matrix))
+		if (!isBistochastic(matrix, tolerance.forSize(matrix.length)))
 			throw new BVNNonBistochasticMatrixException();
 	
 
 	}
 
+	/**
+	 * Checks that a sparse matrix is bistochastic. A sparse matrix is always square.
+	 * 
+	 * @param matrix the matrix to check
+	 * @throws BVNNonBistochasticMatrixException if the matrix is not bistochastic
+	 */
+	public static void checkMatrixInput(SparseMatrix matrix) throws BVNNonBistochasticMatrixException {
+		checkMatrixInput(matrix, Tolerance.DEFAULT);
+	}
+
+	/**
+	 * Checks that a sparse matrix is bistochastic, to within a tolerance.
+	 * 
+	 * @param matrix the matrix to check
+	 * @param tolerance how far each row and column sum may be from one
+	 * @throws BVNNonBistochasticMatrixException if the matrix is not bistochastic
+	 */
+	public static void checkMatrixInput(SparseMatrix matrix, Tolerance tolerance) throws BVNNonBistochasticMatrixException {
+		if (!isBistochastic(matrix, tolerance.forSize(matrix.size())))
+			throw new BVNNonBistochasticMatrixException();
+	}
+
 	static boolean isNonNeg(double[][] matrix) {
 		// check for non-neg
 		return !(Arrays.stream(matrix)
@@ -60,11 +94,15 @@ public class BVNUtils {
 	}
 
 	static boolean isBistochastic(double[][] matrix) {
+		return isBistochastic(matrix, BVNDecomposer.EPSILON);
+	}
+
+	static boolean isBistochastic(double[][] matrix, double epsilon) {
 		// check to make sure the matrix is bistochastic.
 		// first, check the row sums.
 		if (Arrays.stream(matrix)
 				.map(row -> Arrays.stream(row).sum())
-				.anyMatch(d -> Math.abs(1.0 - d) > BVNDecomposer.EPSILON))
+				.anyMatch(d -> Math.abs(1.0 - d) > epsilon))
 			return false;
 
 		// next, check the column sums
@@ -73,7 +111,7 @@ public class BVNUtils {
 			for (int j = 0; j < matrix[i].length; j++)
 				collector += matrix[i][j];
 			return collector;
-		}).anyMatch(d -> Math.abs(1 - d) > BVNDecomposer.EPSILON))
+		}).anyMatch(d -> Math.abs(1 - d) > epsilon))
 			return false;;
 
 		// check the individual values
@@ -83,5 +121,41 @@ public class BVNUtils {
 		return true;
 	}
 
+	static boolean isNonNeg(SparseMatrix matrix) {
+		for (int i = 0; i < matrix.getNonZeroCount(); i++) {
+			if (matrix.getValue(i) < 0)
+				return false;
+		}
+
+		return true;
+	}
+
+	static boolean isBistochastic(SparseMatrix matrix) {
+		return isBistochastic(matrix, BVNDecomposer.EPSILON);
+	}
+
+	static boolean isBistochastic(SparseMatrix matrix, double epsilon) {
+		// accumulate the row and column sums in one pass over the non-zeros
+		int n = matrix.size();
+		double[] colSums = new double[n];
+		for (int row = 0; row < n; row++) {
+			double rowSum = 0.0;
+			for (int i = matrix.getRowStart(row); i < matrix.getRowEnd(row); i++) {
+				rowSum += matrix.getValue(i);
+				colSums[matrix.getColumn(i)] += matrix.getValue(i);
+			}
+
+			if (Math.abs(1.0 - rowSum) > epsilon)
+				return false;
+		}
+
+		for (double d : colSums) {
+			if (Math.abs(1.0 - d) > epsilon)
+				return false;
+		}
+
+		return isNonNeg(matrix);
+	}
+
 
 }
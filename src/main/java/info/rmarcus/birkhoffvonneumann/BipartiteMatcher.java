@@ -0,0 +1,283 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.Arrays;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
+
+/**
+ * A Hopcroft-Karp bipartite matcher over an int[] (CSR-style) adjacency structure.
+ * 
+ * Rows form one side of the bipartite graph and columns form the other. Each row
+ * owns a contiguous range of the adjacency array holding the columns it is connected
+ * to. All working storage is allocated up front, so building the graph and computing
+ * a matching does not allocate.
+ * 
+ * The matching is kept between calls. After edges are removed or an edge is forced,
+ * repair() only searches for augmenting paths from the rows that lost their partner,
+ * which is much cheaper than matching the whole graph again.
+ *
+ */
+class BipartiteMatcher {
+	private static final int INF = Integer.MAX_VALUE;
+
+	private final int n;
+	private final int[] rowStart;
+	private final int[] rowEnd;
+	private final int[] adj;
+	private int numEdges;
+
+	private int forcedRow = -1;
+	private int forcedRowEnd;
+
+	private final int[] rowMatch;
+	private final int[] colMatch;
+
+	// working storage for the BFS / DFS phases
+	private final int[] dist;
+	private final int[] queue;
+	private final int[] stack;
+	private final int[] nextEdge;
+
+	BipartiteMatcher(int n, int edgeCapacity) {
+		this.n = n;
+		rowStart = new int[n];
+		rowEnd = new int[n];
+		adj = new int[edgeCapacity];
+
+		rowMatch = new int[n];
+		colMatch = new int[n];
+		Arrays.fill(rowMatch, -1);
+		Arrays.fill(colMatch, -1);
+
+		dist = new int[n];
+		queue = new int[n];
+		stack = new int[n];
+		nextEdge = new int[n];
+	}
+
+	/**
+	 * Removes every edge and clears the matching. Rows must then be re-added
+	 * using beginRow and addEdge.
+	 */
+	void reset() {
+		release();
+		numEdges = 0;
+		Arrays.fill(rowStart, 0);
+		Arrays.fill(rowEnd, 0);
+		Arrays.fill(rowMatch, -1);
+		Arrays.fill(colMatch, -1);
+	}
+
+	/**
+	 * Adds the edge between row and col to the matching. Both must currently be
+	 * unmatched, and the edge must be in the graph.
+	 * 
+	 * @param row the row
+	 * @param col the column
+	 */
+	void addToMatching(int row, int col) {
+		rowMatch[row] = col;
+		colMatch[col] = row;
+	}
+
+	/**
+	 * Starts the adjacency range of a row. Rows must be added in order, each
+	 * followed by its edges.
+	 * 
+	 * @param row the row
+	 */
+	void beginRow(int row) {
+		rowStart[row] = numEdges;
+		rowEnd[row] = numEdges;
+	}
+
+	void addEdge(int row, int col) {
+		adj[numEdges++] = col;
+		rowEnd[row] = numEdges;
+	}
+
+	/**
+	 * Removes the edge between row and col if it exists. If the edge was part of
+	 * the matching, both endpoints become unmatched.
+	 * 
+	 * @param row the row
+	 * @param col the column
+	 */
+	void removeEdge(int row, int col) {
+		for (int e = rowStart[row]; e < rowEnd[row]; e++) {
+			if (adj[e] != col)
+				continue;
+
+			// order within a row does not matter, so swap the last edge into the hole
+			rowEnd[row]--;
+			adj[e] = adj[rowEnd[row]];
+
+			if (rowMatch[row] == col) {
+				rowMatch[row] = -1;
+				colMatch[col] = -1;
+			}
+			return;
+		}
+	}
+
+	/**
+	 * Forces the edge between row and col into the matching. The row is matched to
+	 * col (unmatching any previous partners of either) and all of the other edges
+	 * of the row are hidden until release() is called.
+	 * 
+	 * @param row the row
+	 * @param col the column
+	 */
+	void force(int row, int col) {
+		release();
+
+		int e = rowStart[row];
+		while (e < rowEnd[row] && adj[e] != col)
+			e++;
+
+		if (e == rowEnd[row])
+			throw new BVNRuntimeException("Cannot force an edge that is not in the graph");
+
+		adj[e] = adj[rowStart[row]];
+		adj[rowStart[row]] = col;
+
+		forcedRow = row;
+		forcedRowEnd = rowEnd[row];
+		rowEnd[row] = rowStart[row] + 1;
+
+		int oldCol = rowMatch[row];
+		if (oldCol >= 0)
+			colMatch[oldCol] = -1;
+
+		int oldRow = colMatch[col];
+		if (oldRow >= 0)
+			rowMatch[oldRow] = -1;
+
+		rowMatch[row] = col;
+		colMatch[col] = row;
+	}
+
+	/**
+	 * Restores the edges hidden by the last call to force().
+	 */
+	void release() {
+		if (forcedRow < 0)
+			return;
+
+		rowEnd[forcedRow] = forcedRowEnd;
+		forcedRow = -1;
+	}
+
+	/**
+	 * Grows the current matching into a maximum matching by searching for augmenting
+	 * paths from the unmatched rows only. On a fresh matcher this computes a maximum
+	 * matching from scratch.
+	 */
+	void repair() {
+		while (buildLayers()) {
+			for (int row = 0; row < n; row++)
+				nextEdge[row] = rowStart[row];
+
+			for (int row = 0; row < n; row++) {
+				if (rowMatch[row] < 0)
+					augment(row);
+			}
+		}
+	}
+
+	/**
+	 * @param row the row
+	 * @return the column matched to the row, or -1 if the row is unmatched
+	 */
+	int getMatchedColumn(int row) {
+		return rowMatch[row];
+	}
+
+	private boolean buildLayers() {
+		int head = 0;
+		int tail = 0;
+
+		for (int row = 0; row < n; row++) {
+			if (rowMatch[row] < 0) {
+				dist[row] = 0;
+				queue[tail++] = row;
+			} else {
+				dist[row] = INF;
+			}
+		}
+
+		boolean foundFree = false;
+		while (head < tail) {
+			int row = queue[head++];
+			for (int e = rowStart[row]; e < rowEnd[row]; e++) {
+				int other = colMatch[adj[e]];
+				if (other < 0) {
+					foundFree = true;
+				} else if (dist[other] == INF) {
+					dist[other] = dist[row] + 1;
+					queue[tail++] = other;
+				}
+			}
+		}
+
+		return foundFree;
+	}
+
+	private boolean augment(int root) {
+		// iterative DFS along the BFS layers. nextEdge[row] always points at the
+		// edge currently being explored from that row, so once a free column is
+		// reached the augmenting path can be read back off the stack.
+		int top = 0;
+		stack[0] = root;
+
+		while (top >= 0) {
+			int row = stack[top];
+
+			if (nextEdge[row] == rowEnd[row]) {
+				// dead end, never visit this row again during this phase
+				dist[row] = INF;
+				top--;
+				continue;
+			}
+
+			int other = colMatch[adj[nextEdge[row]]];
+			if (other < 0) {
+				for (int i = top; i >= 0; i--) {
+					int r = stack[i];
+					int c = adj[nextEdge[r]];
+					rowMatch[r] = c;
+					colMatch[c] = r;
+				}
+				return true;
+			}
+
+			if (dist[other] != INF && dist[other] == dist[row] + 1) {
+				stack[++top] = other;
+			} else {
+				nextEdge[row]++;
+			}
+		}
+
+		return false;
+	}
+}
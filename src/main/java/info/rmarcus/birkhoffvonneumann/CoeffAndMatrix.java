@@ -40,8 +40,14 @@ public class CoeffAndMatrix {
 	
 	public static int[] asFlatPerm(double[][] permutation) {
 		int[] toR = new int[permutation.length];
-		CoeffAndMatrix.asSwaps(permutation).stream()
-			.forEach(s -> toR[s.origPos] = s.newPos);
+		for (int i = 0; i < permutation.length; i++) {
+			for (int j = 0; j < permutation[i].length; j++) {
+				if (permutation[i][j] > 0) {
+					toR[i] = j;
+					break;
+				}
+			}
+		}
 		return toR;
 	}
 	
@@ -68,6 +74,15 @@ public class CoeffAndMatrix {
 		return toR;
 	}
 	
+	public static Set<Swap> asSwaps(int[] permutation) {
+		Set<Swap> toR = new HashSet<>();
+		
+		for (int i = 0; i < permutation.length; i++)
+			toR.add(new Swap(i, permutation[i]));
+		
+		return toR;
+	}
+	
 	public static class Swap {
 		private final int origPos;
 		private final int newPos;
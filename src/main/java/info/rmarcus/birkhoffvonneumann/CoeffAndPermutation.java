@@ -0,0 +1,54 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.Set;
+
+import info.rmarcus.birkhoffvonneumann.CoeffAndMatrix.Swap;
+
+/**
+ * A term of a decomposition stored as a permutation array instead of a permutation
+ * matrix: row i of the permutation matrix has its one in column permutation[i].
+ * 
+ * The n x n matrix is only built when getMatrix() or asCoeffAndMatrix() is called.
+ *
+ */
+public class CoeffAndPermutation {
+	public final double coeff;
+	public final int[] permutation;
+
+	public CoeffAndPermutation(double coeff, int[] permutation) {
+		this.coeff = coeff;
+		this.permutation = permutation;
+	}
+
+	public double[][] getMatrix() {
+		return CoeffAndMatrix.fromFlatPerm(permutation);
+	}
+
+	public CoeffAndMatrix asCoeffAndMatrix() {
+		return new CoeffAndMatrix(coeff, getMatrix());
+	}
+
+	public Set<Swap> asSwaps() {
+		return CoeffAndMatrix.asSwaps(permutation);
+	}
+}
@@ -0,0 +1,187 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A least-recently-used cache of prepared distributions, keyed by the identity of the
+ * matrix they were prepared from.
+ * 
+ * Callers often modify a weight matrix in place between samples, so each entry also keeps
+ * a copy of the matrix's values. A lookup only hits when the matrix still holds those
+ * values; comparing them is O(nnz), which is far cheaper than decomposing again.
+ * 
+ * The matrices are only weakly referenced. Once a caller drops a matrix (for example, a
+ * learner that allocates a new weight matrix every step), its entry is removed the next
+ * time the cache is used, along with the copy of its values and its distribution.
+ *
+ */
+class DecompositionCache {
+	private final LinkedHashMap<Key, Cached> entries;
+	private final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+	private int capacity;
+
+	DecompositionCache(int capacity) {
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<Key, Cached>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.@Nullable Entry<Key, Cached> eldest) {
+				return size() > DecompositionCache.this.capacity;
+			}
+		};
+	}
+
+	synchronized void setCapacity(int capacity) {
+		this.capacity = capacity;
+		expunge();
+		while (entries.size() > capacity)
+			entries.remove(entries.keySet().iterator().next());
+	}
+
+	synchronized void clear() {
+		entries.clear();
+		expunge();
+	}
+
+	@Nullable
+	synchronized PreparedDistribution get(double[][] matrix) {
+		expunge();
+		@Nullable Cached e = entries.get(new Key(matrix, null));
+		if (e == null)
+			return null;
+
+		int pos = 0;
+		for (double[] row : matrix) {
+			if (pos + row.length > e.snapshot.length)
+				return null;
+
+			for (double d : row) {
+				if (d != e.snapshot[pos++])
+					return null;
+			}
+		}
+
+		return (pos == e.snapshot.length ? e.dist : null);
+	}
+
+	@Nullable
+	synchronized PreparedDistribution get(SparseMatrix matrix) {
+		expunge();
+		@Nullable Cached e = entries.get(new Key(matrix, null));
+		if (e == null)
+			return null;
+
+		for (int i = 0; i < e.snapshot.length; i++) {
+			if (matrix.getValue(i) != e.snapshot[i])
+				return null;
+		}
+
+		return e.dist;
+	}
+
+	synchronized void put(double[][] matrix, PreparedDistribution dist) {
+		expunge();
+		if (capacity <= 0)
+			return;
+
+		int size = 0;
+		for (double[] row : matrix)
+			size += row.length;
+
+		double[] snapshot = new double[size];
+		int pos = 0;
+		for (double[] row : matrix) {
+			System.arraycopy(row, 0, snapshot, pos, row.length);
+			pos += row.length;
+		}
+
+		entries.put(new Key(matrix, collected), new Cached(snapshot, dist));
+	}
+
+	synchronized void put(SparseMatrix matrix, PreparedDistribution dist) {
+		expunge();
+		if (capacity <= 0)
+			return;
+
+		double[] snapshot = new double[matrix.getNonZeroCount()];
+		for (int i = 0; i < snapshot.length; i++)
+			snapshot[i] = matrix.getValue(i);
+
+		entries.put(new Key(matrix, collected), new Cached(snapshot, dist));
+	}
+
+	/**
+	 * Removes the entries of matrices that have been garbage collected.
+	 */
+	private void expunge() {
+		@Nullable Object key;
+		while ((key = collected.poll()) != null)
+			entries.remove(key);
+	}
+
+	/**
+	 * A weak reference to a matrix that compares by the identity of the matrix. A key whose
+	 * matrix has been collected is only equal to itself.
+	 */
+	private static class Key extends WeakReference<Object> {
+		private final int hash;
+
+		Key(Object matrix, @Nullable ReferenceQueue<Object> queue) {
+			super(matrix, queue);
+			hash = System.identityHashCode(matrix);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(@Nullable Object o) {
+			if (o == this)
+				return true;
+
+			if (!(o instanceof Key))
+				return false;
+
+			@Nullable Object matrix = get();
+			return matrix != null && matrix == ((Key) o).get();
+		}
+	}
+
+	private static class Cached {
+		final double[] snapshot;
+		final PreparedDistribution dist;
+
+		Cached(double[] snapshot, PreparedDistribution dist) {
+			this.snapshot = snapshot;
+			this.dist = dist;
+		}
+	}
+}
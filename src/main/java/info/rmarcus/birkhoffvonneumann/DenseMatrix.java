@@ -0,0 +1,131 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
+
+/**
+ * A square matrix stored row-major in a single double[]: the entry at (row, col) is at
+ * getData()[row * size() + col].
+ * 
+ * Compared with a jagged double[][], a whole-matrix loop is one pass over one array, with
+ * no per-row pointer chase, which the JIT can unroll and vectorize. MatrixUtils,
+ * SinkhornBalancer and BVNDecomposer accept a DenseMatrix directly; fromArray and toArray
+ * convert to and from the double[][] API.
+ *
+ */
+public class DenseMatrix {
+	private final int n;
+	private final double[] data;
+
+	/**
+	 * Creates an n by n matrix of zeros.
+	 * @param n the number of rows and columns
+	 */
+	public DenseMatrix(int n) {
+		this(n, new double[entries(n)]);
+	}
+
+	/**
+	 * Creates a matrix backed by a row-major array. The array is used directly, not copied.
+	 * 
+	 * @param n the number of rows and columns
+	 * @param data the n * n entries, row by row
+	 */
+	public DenseMatrix(int n, double[] data) {
+		if (n < 0 || data.length != (long) n * n)
+			throw new BVNRuntimeException("A " + n + "x" + n + " matrix needs " + ((long) n * n) + " entries, not " + data.length);
+
+		this.n = n;
+		this.data = data;
+	}
+
+	/**
+	 * Copies a square double[][] into a new dense matrix.
+	 * 
+	 * @param matrix the matrix to copy
+	 * @return the dense matrix
+	 */
+	public static DenseMatrix fromArray(double[][] matrix) {
+		BVNUtils.checkSquare(matrix);
+
+		int n = matrix.length;
+		double[] data = new double[entries(n)];
+		for (int row = 0; row < n; row++)
+			System.arraycopy(matrix[row], 0, data, row * n, n);
+
+		return new DenseMatrix(n, data);
+	}
+
+	/**
+	 * @return n * n, checked to fit in a single array before anything is allocated
+	 */
+	private static int entries(int n) {
+		if (n < 0 || (long) n * n > Integer.MAX_VALUE)
+			throw new BVNRuntimeException("Cannot store a " + n + "x" + n + " matrix in a single array");
+
+		return n * n;
+	}
+
+	/**
+	 * @return a copy of this matrix as a double[][]
+	 */
+	public double[][] toArray() {
+		double[][] toR = new double[n][n];
+		for (int row = 0; row < n; row++)
+			System.arraycopy(data, row * n, toR[row], 0, n);
+
+		return toR;
+	}
+
+	public int size() {
+		return n;
+	}
+
+	/**
+	 * @return the backing array, row-major. Changes to it change the matrix.
+	 */
+	public double[] getData() {
+		return data;
+	}
+
+	/**
+	 * @return the index in getData() of the first entry of a row
+	 */
+	public int rowOffset(int row) {
+		return row * n;
+	}
+
+	public double get(int row, int col) {
+		return data[row * n + col];
+	}
+
+	public void set(int row, int col, double value) {
+		data[row * n + col] = value;
+	}
+
+	/**
+	 * @return a copy of this matrix with its own backing array
+	 */
+	public DenseMatrix copy() {
+		return new DenseMatrix(n, data.clone());
+	}
+}
@@ -0,0 +1,281 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.Random;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNException;
+
+/**
+ * Samples permutations with the ENTROPY method: repeatedly take the row with the smallest
+ * sum of x log x over its free columns, and pick its column in proportion to its weight
+ * among the free columns.
+ * 
+ * Each row's x log x sum and remaining mass are kept up to date as columns are taken,
+ * instead of being recomputed every round, and x log x is computed once per entry. A dense
+ * sample takes O(n^2) time, and a sparse one O(nnz log n). Zero entries contribute
+ * nothing (0 log 0 is taken to be 0).
+ * 
+ * As with GibbsSampler, the scratch space lives in a per-thread workspace. The tables with
+ * one slot per entry are only kept between samples while they have at most
+ * MAX_RETAINED_ENTRIES slots, so that sampling a large matrix on a long-lived thread (such as
+ * one from the common pool) does not pin an n^2 table for the thread's lifetime.
+ *
+ */
+class EntropySampler {
+	/**
+	 * The largest per-entry tables a workspace keeps after a sample (a 256x256 dense matrix).
+	 */
+	static final int MAX_RETAINED_ENTRIES = 1 << 16;
+
+	private final ThreadLocal<Workspace> workspace = ThreadLocal.withInitial(() -> new Workspace(0));
+
+	/**
+	 * Draws a sample from a dense matrix.
+	 * 
+	 * @param r a random number generator
+	 * @param matrix a bistochastic matrix
+	 * @param out receives the sample: row i maps to column out[i]
+	 * @throws BVNException if a row runs out of mass before a column is picked
+	 */
+	void sample(Random r, double[][] matrix, int[] out) throws BVNException {
+		Workspace w = workspace(matrix.length);
+		try {
+			sample(r, matrix, out, w);
+		} finally {
+			w.trimEntries();
+		}
+	}
+
+	private static void sample(Random r, double[][] matrix, int[] out, Workspace w) throws BVNException {
+		int n = matrix.length;
+		w.ensureEntries(n * n, false);
+
+		for (int row = 0; row < n; row++) {
+			double ent = 0.0;
+			double mass = 0.0;
+			for (int col = 0; col < n; col++) {
+				double x = xlogx(matrix[row][col]);
+				w.xlogx[row * n + col] = x;
+				ent += x;
+				mass += matrix[row][col];
+			}
+			w.ent[row] = ent;
+			w.mass[row] = mass;
+		}
+
+		for (int step = 0; step < n; step++) {
+			// find the smallest entry in ent, excluding removed rows.
+			int bestIdx = -1;
+			for (int row = 0; row < n; row++) {
+				if (w.removedRows[row])
+					continue;
+
+				if (bestIdx == -1 || w.ent[bestIdx] > w.ent[row])
+					bestIdx = row;
+			}
+
+			// roll a random number between 0 and 1 and select accordingly
+			double[] row = matrix[bestIdx];
+			double remainingMass = w.mass[bestIdx];
+			double v = r.nextDouble();
+			int bestColIdx = -1;
+			for (int col = 0; col < n; col++) {
+				if (w.removedCols[col])
+					continue;
+
+				v -= row[col] / remainingMass;
+				if (v <= 0) {
+					bestColIdx = col;
+					break;
+				}
+			}
+
+			if (bestColIdx == -1)
+				throw new BVNException("Unable to sample a row up to mass " + v);
+
+			w.removedRows[bestIdx] = true;
+			w.removedCols[bestColIdx] = true;
+			out[bestIdx] = bestColIdx;
+
+			// the remaining rows lose the column just taken
+			for (int other = 0; other < n; other++) {
+				if (w.removedRows[other])
+					continue;
+
+				w.ent[other] -= w.xlogx[other * n + bestColIdx];
+				w.mass[other] -= matrix[other][bestColIdx];
+			}
+		}
+	}
+
+	/**
+	 * Draws a sample from a sparse matrix, only visiting its non-zero entries.
+	 * 
+	 * @param r a random number generator
+	 * @param matrix a bistochastic matrix
+	 * @param out receives the sample: row i maps to column out[i]
+	 * @throws BVNException if a row has no free columns left to pick from
+	 */
+	void sample(Random r, SparseMatrix matrix, int[] out) throws BVNException {
+		Workspace w = workspace(matrix.size());
+		try {
+			sample(r, matrix, out, w);
+		} finally {
+			w.trimEntries();
+		}
+	}
+
+	private static void sample(Random r, SparseMatrix matrix, int[] out, Workspace w) throws BVNException {
+		int n = matrix.size();
+		int nnz = matrix.getNonZeroCount();
+		w.ensureEntries(nnz, true);
+
+		// index the entries by column, so that taking a column only touches its entries
+		for (int i = 0; i <= n; i++)
+			w.colStart[i] = 0;
+		for (int i = 0; i < nnz; i++)
+			w.colStart[matrix.getColumn(i) + 1]++;
+		for (int col = 0; col < n; col++)
+			w.colStart[col + 1] += w.colStart[col];
+
+		for (int row = 0; row < n; row++) {
+			double ent = 0.0;
+			double mass = 0.0;
+			for (int i = matrix.getRowStart(row); i < matrix.getRowEnd(row); i++) {
+				double x = xlogx(matrix.getValue(i));
+				w.xlogx[i] = x;
+				ent += x;
+				mass += matrix.getValue(i);
+
+				int col = matrix.getColumn(i);
+				w.byColumn[w.colStart[col] + w.colFill[col]++] = i;
+				w.rowOf[i] = row;
+			}
+			w.ent[row] = ent;
+			w.mass[row] = mass;
+			w.heap.put(row, ent);
+		}
+
+		for (int step = 0; step < n; step++) {
+			int bestIdx = w.heap.peek();
+			w.heap.remove(bestIdx);
+
+			double remainingMass = w.mass[bestIdx];
+			double v = r.nextDouble();
+			int bestColIdx = -1;
+			for (int i = matrix.getRowStart(bestIdx); i < matrix.getRowEnd(bestIdx); i++) {
+				if (w.removedCols[matrix.getColumn(i)])
+					continue;
+
+				v -= matrix.getValue(i) / remainingMass;
+				if (v <= 0) {
+					bestColIdx = matrix.getColumn(i);
+					break;
+				}
+			}
+
+			if (bestColIdx == -1)
+				throw new BVNException("Unable to sample a row up to mass " + v);
+
+			w.removedRows[bestIdx] = true;
+			w.removedCols[bestColIdx] = true;
+			out[bestIdx] = bestColIdx;
+
+			for (int k = w.colStart[bestColIdx]; k < w.colStart[bestColIdx + 1]; k++) {
+				int i = w.byColumn[k];
+				int other = w.rowOf[i];
+				if (w.removedRows[other])
+					continue;
+
+				w.ent[other] -= w.xlogx[i];
+				w.mass[other] -= matrix.getValue(i);
+				w.heap.put(other, w.ent[other]);
+			}
+		}
+	}
+
+	static double xlogx(double x) {
+		return (x <= 0.0 ? 0.0 : x * Math.log(x));
+	}
+
+	private Workspace workspace(int n) {
+		Workspace w = workspace.get();
+		if (w.ent.length < n) {
+			w = new Workspace(n);
+			workspace.set(w);
+		}
+
+		for (int i = 0; i < n; i++) {
+			w.removedRows[i] = false;
+			w.removedCols[i] = false;
+			w.colFill[i] = 0;
+		}
+		w.heap.clear();
+
+		return w;
+	}
+
+	private static class Workspace {
+		final boolean[] removedRows;
+		final boolean[] removedCols;
+		final double[] ent;
+		final double[] mass;
+		final IndexedMinHeap heap;
+		final int[] colStart;
+		final int[] colFill;
+
+		// one slot per entry of the matrix, grown as needed and dropped when too large to keep
+		double[] xlogx = new double[0];
+		int[] byColumn = new int[0];
+		int[] rowOf = new int[0];
+
+		Workspace(int n) {
+			removedRows = new boolean[n];
+			removedCols = new boolean[n];
+			ent = new double[n];
+			mass = new double[n];
+			heap = new IndexedMinHeap(n);
+			colStart = new int[n + 1];
+			colFill = new int[n];
+		}
+
+		void ensureEntries(int entries, boolean sparse) {
+			if (xlogx.length < entries)
+				xlogx = new double[entries];
+
+			if (sparse && byColumn.length < entries) {
+				byColumn = new int[entries];
+				rowOf = new int[entries];
+			}
+		}
+
+		void trimEntries() {
+			if (xlogx.length > MAX_RETAINED_ENTRIES)
+				xlogx = new double[0];
+
+			if (byColumn.length > MAX_RETAINED_ENTRIES) {
+				byColumn = new int[0];
+				rowOf = new int[0];
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.Random;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNException;
+
+/**
+ * Samples permutations with the GIBBS method: visit the rows in a random order, and pick
+ * each row's column in proportion to its weight among the columns that are still free.
+ * 
+ * All of the scratch space a sample needs is kept in a per-thread workspace that is only
+ * reallocated when a larger matrix comes along, and samples are written into an array
+ * supplied by the caller, so drawing a sample allocates nothing.
+ *
+ */
+class GibbsSampler {
+	private final ThreadLocal<Workspace> workspace = ThreadLocal.withInitial(() -> new Workspace(0));
+
+	/**
+	 * Draws a sample from a dense matrix.
+	 * 
+	 * @param r a random number generator
+	 * @param matrix a bistochastic matrix
+	 * @param out receives the sample: row i maps to column out[i]
+	 * @throws BVNException if a row runs out of mass before a column is picked
+	 */
+	void sample(Random r, double[][] matrix, int[] out) throws BVNException {
+		int n = matrix.length;
+		Workspace w = workspace(n);
+		w.shuffleRows(r, n);
+
+		for (int i = 0; i < n; i++)
+			w.rowSums[i] = 1.0;
+
+		for (int rowIdx = 0; rowIdx < n; rowIdx++) {
+			int selectedRow = w.rowOrder[rowIdx];
+			double[] row = matrix[selectedRow];
+
+			// roll a random number between 0 and 1 and select accordingly
+			double remainingMass = w.rowSums[selectedRow];
+			double v = r.nextDouble();
+			int bestColIdx = -1;
+			for (int col = 0; col < n; col++) {
+				if (w.removedCols[col])
+					continue;
+
+				v -= row[col] / remainingMass;
+				if (v <= 0) {
+					bestColIdx = col;
+					break;
+				}
+			}
+
+			if (bestColIdx == -1)
+				throw new BVNException("Unable to sample a row up to mass " + v);
+
+			// the rows after this one lose the mass of the column just taken
+			for (int idxToUpdate = rowIdx + 1; idxToUpdate < n; idxToUpdate++) {
+				int rowToUpdate = w.rowOrder[idxToUpdate];
+				w.rowSums[rowToUpdate] -= matrix[rowToUpdate][bestColIdx];
+			}
+
+			w.removedCols[bestColIdx] = true;
+			out[selectedRow] = bestColIdx;
+		}
+	}
+
+	/**
+	 * Draws a sample from a sparse matrix, only visiting its non-zero entries.
+	 * 
+	 * @param r a random number generator
+	 * @param matrix a bistochastic matrix
+	 * @param out receives the sample: row i maps to column out[i]
+	 * @throws BVNException if a row has no free columns left to pick from
+	 */
+	void sample(Random r, SparseMatrix matrix, int[] out) throws BVNException {
+		int n = matrix.size();
+		Workspace w = workspace(n);
+		w.shuffleRows(r, n);
+
+		for (int rowIdx = 0; rowIdx < n; rowIdx++) {
+			int selectedRow = w.rowOrder[rowIdx];
+			int start = matrix.getRowStart(selectedRow);
+			int end = matrix.getRowEnd(selectedRow);
+
+			// the remaining mass of the row, over the columns still available
+			double remainingMass = 0.0;
+			for (int i = start; i < end; i++) {
+				if (!w.removedCols[matrix.getColumn(i)])
+					remainingMass += matrix.getValue(i);
+			}
+
+			double v = r.nextDouble();
+			int bestColIdx = -1;
+			for (int i = start; i < end; i++) {
+				if (w.removedCols[matrix.getColumn(i)])
+					continue;
+
+				v -= matrix.getValue(i) / remainingMass;
+				if (v <= 0) {
+					bestColIdx = matrix.getColumn(i);
+					break;
+				}
+			}
+
+			if (bestColIdx == -1)
+				throw new BVNException("Unable to sample a row up to mass " + v);
+
+			w.removedCols[bestColIdx] = true;
+			out[selectedRow] = bestColIdx;
+		}
+	}
+
+	private Workspace workspace(int n) {
+		Workspace w = workspace.get();
+		if (w.rowOrder.length < n) {
+			w = new Workspace(n);
+			workspace.set(w);
+		}
+
+		for (int i = 0; i < n; i++)
+			w.removedCols[i] = false;
+
+		return w;
+	}
+
+	private static class Workspace {
+		final int[] rowOrder;
+		final boolean[] removedCols;
+		final double[] rowSums;
+
+		Workspace(int n) {
+			rowOrder = new int[n];
+			removedCols = new boolean[n];
+			rowSums = new double[n];
+		}
+
+		void shuffleRows(Random r, int n) {
+			// Fisher-Yates, in place
+			for (int i = 0; i < n; i++)
+				rowOrder[i] = i;
+
+			for (int i = n - 1; i > 0; i--) {
+				int j = r.nextInt(i + 1);
+				int tmp = rowOrder[i];
+				rowOrder[i] = rowOrder[j];
+				rowOrder[j] = tmp;
+			}
+		}
+	}
+}
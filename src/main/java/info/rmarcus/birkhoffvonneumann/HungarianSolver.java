@@ -0,0 +1,171 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.Arrays;
+
+/**
+ * Solves the assignment problem (a minimum cost perfect matching between n rows and n
+ * columns) over a flat, row-major cost array, with the O(n^3) shortest augmenting path
+ * form of the Hungarian algorithm used by Jonker and Volgenant.
+ * 
+ * Each row is added to the matching with a Dijkstra-style search over reduced costs
+ * cost[i][j] - u[i] - v[j], adjusting the row and column potentials u and v so that the
+ * matched entries stay tight. The potentials and the matching are kept between calls.
+ * Any potentials that leave every reduced cost non-negative are a valid starting point,
+ * so when the costs only ever increase between calls (as when entries of a residual
+ * matrix shrink), the last call's potentials carry over. The potentials of each matched
+ * row and column are then raised as far as their row and column allow; the rows whose
+ * matched entry becomes tight again keep their column, and only the other rows are
+ * searched for again.
+ * 
+ * All working storage is allocated up front, so solving does not allocate.
+ *
+ */
+class HungarianSolver implements AssignmentSolver {
+	private final int n;
+
+	// the arrays below are 1-based, with index 0 as a sentinel column for the row being added
+	private final double[] u;
+	private final double[] v;
+	private final int[] colMatch;
+	private final int[] rowMatch;
+	private final int[] way;
+	private final double[] minReduced;
+	private final boolean[] visited;
+
+	HungarianSolver(int n) {
+		this.n = n;
+		u = new double[n + 1];
+		v = new double[n + 1];
+		colMatch = new int[n + 1];
+		rowMatch = new int[n + 1];
+		way = new int[n + 1];
+		minReduced = new double[n + 1];
+		visited = new boolean[n + 1];
+	}
+
+	@Override
+	public void solve(double[] cost, int[] out) {
+		keepTightMatches(cost);
+
+		for (int row = 1; row <= n; row++) {
+			if (rowMatch[row] != 0)
+				continue;
+
+			colMatch[0] = row;
+			int col = 0;
+			Arrays.fill(minReduced, Double.POSITIVE_INFINITY);
+			Arrays.fill(visited, false);
+
+			// grow a shortest path tree from the new row until it reaches a free column
+			do {
+				visited[col] = true;
+				int fromRow = colMatch[col];
+				int base = (fromRow - 1) * n - 1;
+				double delta = Double.POSITIVE_INFINITY;
+				int nextCol = 0;
+
+				for (int j = 1; j <= n; j++) {
+					if (visited[j])
+						continue;
+
+					double reduced = cost[base + j] - u[fromRow] - v[j];
+					if (reduced < minReduced[j]) {
+						minReduced[j] = reduced;
+						way[j] = col;
+					}
+
+					if (minReduced[j] < delta) {
+						delta = minReduced[j];
+						nextCol = j;
+					}
+				}
+
+				for (int j = 0; j <= n; j++) {
+					if (visited[j]) {
+						u[colMatch[j]] += delta;
+						v[j] -= delta;
+					} else {
+						minReduced[j] -= delta;
+					}
+				}
+
+				col = nextCol;
+			} while (colMatch[col] != 0);
+
+			// flip the matching along the path back to the new row
+			do {
+				int prevCol = way[col];
+				colMatch[col] = colMatch[prevCol];
+				col = prevCol;
+			} while (col != 0);
+		}
+
+		for (int j = 1; j <= n; j++) {
+			rowMatch[colMatch[j]] = j;
+			out[colMatch[j] - 1] = j - 1;
+		}
+	}
+
+	/**
+	 * Raises the potential of each matched row by the smallest reduced cost in its row,
+	 * then that of its column by the smallest reduced cost in the column, which keeps every
+	 * reduced cost non-negative. Unmatches the rows whose matched entry is still not tight.
+	 */
+	private void keepTightMatches(double[] cost) {
+		for (int row = 1; row <= n; row++) {
+			int col = rowMatch[row];
+			if (col == 0)
+				continue;
+
+			int base = (row - 1) * n - 1;
+			double rowMin = Double.POSITIVE_INFINITY;
+			for (int j = 1; j <= n; j++)
+				rowMin = Math.min(rowMin, cost[base + j] - u[row] - v[j]);
+
+			double matched = cost[base + col] - u[row] - v[col];
+			u[row] += rowMin;
+			matched -= rowMin;
+
+			if (matched > 0) {
+				double colMin = Double.POSITIVE_INFINITY;
+				for (int i = col - 1; i < cost.length; i += n)
+					colMin = Math.min(colMin, cost[i] - u[i / n + 1] - v[col]);
+				v[col] += colMin;
+				matched -= colMin;
+			}
+
+			if (matched > 0) {
+				rowMatch[row] = 0;
+				colMatch[col] = 0;
+			}
+		}
+	}
+
+	@Override
+	public void reset() {
+		Arrays.fill(u, 0.0);
+		Arrays.fill(v, 0.0);
+		Arrays.fill(colMatch, 0);
+		Arrays.fill(rowMatch, 0);
+	}
+}
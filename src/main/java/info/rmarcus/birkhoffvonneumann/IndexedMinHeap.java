@@ -0,0 +1,161 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * A binary min-heap over the integer ids 0 to capacity - 1, keyed by a double. Each
+ * id is in the heap at most once, and its position is tracked so that keys can be
+ * changed and ids removed in O(log n) without searching or allocating.
+ *
+ */
+class IndexedMinHeap {
+	private final double[] keys;
+	private final int[] heap;
+	private final int[] pos;
+	private int size;
+
+	IndexedMinHeap(int capacity) {
+		keys = new double[capacity];
+		heap = new int[capacity];
+		pos = new int[capacity];
+		Arrays.fill(pos, -1);
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	boolean contains(int id) {
+		return pos[id] >= 0;
+	}
+
+	/**
+	 * @return the id with the smallest key
+	 */
+	int peek() {
+		if (size == 0)
+			throw new NoSuchElementException();
+
+		return heap[0];
+	}
+
+	/**
+	 * Adds an id to the heap, or changes its key if it is already present.
+	 * 
+	 * @param id the id
+	 * @param key the key of the id
+	 */
+	void put(int id, double key) {
+		if (pos[id] < 0) {
+			keys[id] = key;
+			heap[size] = id;
+			pos[id] = size;
+			size++;
+			siftUp(pos[id]);
+			return;
+		}
+
+		double old = keys[id];
+		keys[id] = key;
+		if (key < old) {
+			siftUp(pos[id]);
+		} else {
+			siftDown(pos[id]);
+		}
+	}
+
+	/**
+	 * Removes an id from the heap. Does nothing if the id is not present.
+	 * 
+	 * @param id the id
+	 */
+	void remove(int id) {
+		int i = pos[id];
+		if (i < 0)
+			return;
+
+		size--;
+		pos[id] = -1;
+		if (i == size)
+			return;
+
+		// move the last element into the hole and restore the heap property
+		int last = heap[size];
+		heap[i] = last;
+		pos[last] = i;
+		siftUp(i);
+		siftDown(pos[last]);
+	}
+
+	/**
+	 * Removes every id from the heap, in time proportional to the number of ids present.
+	 */
+	void clear() {
+		for (int i = 0; i < size; i++)
+			pos[heap[i]] = -1;
+		size = 0;
+	}
+
+	private void siftUp(int i) {
+		int id = heap[i];
+		double key = keys[id];
+
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (keys[heap[parent]] <= key)
+				break;
+
+			heap[i] = heap[parent];
+			pos[heap[i]] = i;
+			i = parent;
+		}
+
+		heap[i] = id;
+		pos[id] = i;
+	}
+
+	private void siftDown(int i) {
+		int id = heap[i];
+		double key = keys[id];
+
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+
+			if (child + 1 < size && keys[heap[child + 1]] < keys[heap[child]])
+				child++;
+
+			if (keys[heap[child]] >= key)
+				break;
+
+			heap[i] = heap[child];
+			pos[heap[i]] = i;
+			i = child;
+		}
+
+		heap[i] = id;
+		pos[id] = i;
+	}
+}
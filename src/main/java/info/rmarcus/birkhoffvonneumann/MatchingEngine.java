@@ -0,0 +1,39 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+/**
+ * The bipartite matching implementation used to find the permutations
+ * of a BVN or GREEDY decomposition, and the mean permutation.
+ * 
+ * NATIVE uses the built-in Hopcroft-Karp matcher (BVN) and assignment solver
+ * (GREEDY and the mean) over primitive arrays.
+ * JGRAPHT builds a jgrapht graph for each step, and is kept as a fallback.
+ * AUCTION solves the mean assignment with an epsilon-scaling auction whose bidding runs
+ * on the common fork-join pool. Its assignments are only optimal to within a relative
+ * 1e-7, not exactly, so it can pick a different mean than NATIVE when permutations are
+ * nearly tied. It only beats NATIVE on one-off solves of large matrices (around n = 1000);
+ * it was 2-4x slower for GREEDY decompositions, so those, like BVN decompositions, use
+ * NATIVE.
+ */
+public enum MatchingEngine {
+	NATIVE, JGRAPHT, AUCTION
+}
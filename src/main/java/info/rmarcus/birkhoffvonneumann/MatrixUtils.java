@@ -20,27 +20,28 @@
  
 package info.rmarcus.birkhoffvonneumann;
 
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.BitSet;
 import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
-import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.function.DoubleUnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 
 import org.apache.commons.math3.linear.ArrayRealVector;
-import org.eclipse.jdt.annotation.NonNull;
 
 import info.rmarcus.NullUtils;
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNException;
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
 
 public class MatrixUtils {
+	/**
+	 * The number of Glynn terms in permanent (as a power of two) computed by each parallel chunk.
+	 */
+	private static final int PERMANENT_CHUNK_BITS = 16;
+
 	public static void multiply(double[][] dest, double[][] a, double[][] b) {
 		for (int i = 0; i < dest.length; i++) {
 			for (int j = 0; j < dest[i].length; j++) {
@@ -106,6 +107,70 @@ public class MatrixUtils {
 		}
 	}
 	
+	/*
+	 * The DenseMatrix versions below are single loops over the backing arrays. The
+	 * matrices must all be the same size.
+	 */
+
+	public static void multiply(DenseMatrix dest, DenseMatrix a, DenseMatrix b) {
+		double[] d = dest.getData();
+		double[] x = a.getData();
+		double[] y = b.getData();
+		for (int i = 0; i < d.length; i++)
+			d[i] = x[i] * y[i];
+	}
+
+	public static void multiply(DenseMatrix dest, DenseMatrix a, double b) {
+		double[] d = dest.getData();
+		double[] x = a.getData();
+		for (int i = 0; i < d.length; i++)
+			d[i] = x[i] * b;
+	}
+
+	public static void add(DenseMatrix dest, DenseMatrix a, DenseMatrix b) {
+		double[] d = dest.getData();
+		double[] x = a.getData();
+		double[] y = b.getData();
+		for (int i = 0; i < d.length; i++)
+			d[i] = x[i] + y[i];
+	}
+
+	public static void add(DenseMatrix dest, DenseMatrix a, double b) {
+		double[] d = dest.getData();
+		double[] x = a.getData();
+		for (int i = 0; i < d.length; i++)
+			d[i] = x[i] + b;
+	}
+
+	public static void subtract(DenseMatrix dest, DenseMatrix a, DenseMatrix b) {
+		double[] d = dest.getData();
+		double[] x = a.getData();
+		double[] y = b.getData();
+		for (int i = 0; i < d.length; i++)
+			d[i] = x[i] - y[i];
+	}
+
+	public static void apply(DenseMatrix dest, DenseMatrix a, DoubleUnaryOperator f) {
+		double[] d = dest.getData();
+		double[] x = a.getData();
+		for (int i = 0; i < d.length; i++)
+			d[i] = f.applyAsDouble(x[i]);
+	}
+
+	/**
+	 * Adds scale times a row-major flattened matrix to dest, without building the scaled
+	 * matrix first.
+	 */
+	public static void addScaled(double[][] dest, double[] flat, double scale) {
+		int n = dest.length;
+		for (int i = 0; i < n; i++) {
+			double[] row = dest[i];
+			int offset = i * n;
+			for (int j = 0; j < row.length; j++)
+				row[j] += scale * flat[offset + j];
+		}
+	}
+
 	public static double dot(double[] a, double[] b) {
 		double accum = 0.0;
 		for (int i = 0; i < a.length && i < b.length; i++) {
@@ -116,51 +181,100 @@ public class MatrixUtils {
 	}
 	
 	public static double[] flatten(double[][] a) {
-		List<Double> l = new ArrayList<Double>(a.length * a.length);
+		int size = 0;
+		for (double[] row : a)
+			size += row.length;
+
+		double[] toR = new double[size];
+		int pos = 0;
 		for (int i = 0; i < a.length; i++) {
-			for (int j = 0; j < a[i].length; j++) {
-				l.add(a[i][j]);
-			}
+			System.arraycopy(a[i], 0, toR, pos, a[i].length);
+			pos += a[i].length;
 		}
-		
-		final double[] toR = l.stream().mapToDouble(d -> d).toArray();
-		if (toR != null)
-			return toR;
-		
-		throw new BVNRuntimeException("Unable to map double stream to array!");
+
+		return toR;
 	}
 
+	/**
+	 * Computes the permanent of a square matrix exactly, with Glynn's formula:
+	 * 
+	 * perm(A) = 2^-(n-1) * sum over d in {-1, 1}^n with d_0 = 1 of
+	 *     (prod_i d_i) * prod_j (sum_i d_i a_ij)
+	 * 
+	 * The sign vectors are visited in Gray-code order, so that each differs from the last
+	 * in one sign and the column sums are updated in O(n) rather than recomputed, for
+	 * O(2^(n-1) n) work in all. Large matrices split the sign vectors into chunks that run
+	 * in parallel on the common fork-join pool.
+	 * 
+	 * @param input a square matrix with fewer than 64 rows (in practice, the work limits n to
+	 * the low thirties)
+	 * @return the permanent
+	 * @throws BVNRuntimeException if the matrix is not square or has 64 or more rows
+	 */
 	public static double permanent(double[][] input) {
+		BVNUtils.checkSquare(input);
 		int n = input.length;
+		if (n == 0)
+			return 1.0;
+		if (n >= 64)
+			throw new BVNRuntimeException("Permanents can only be computed for matrices with fewer than 64 rows, not " + n);
+
+		long terms = 1L << (n - 1);
+		long chunks = Math.max(1, terms >>> PERMANENT_CHUNK_BITS);
+		long chunkSize = terms / chunks;
+
+		double sum;
+		if (chunks == 1) {
+			sum = glynn(input, 0, terms);
+		} else {
+			sum = LongStream.range(0, chunks).parallel()
+					.mapToDouble(c -> glynn(input, c * chunkSize, (c + 1) * chunkSize))
+					.sum();
+		}
 
-		double collector = 0.0;
-		Iterator<BitSet> i = bitStringsOfSize(n);
-		while (i.hasNext()) {
-			BitSet nxt = NullUtils.orThrow(i.next(), () -> new BVNRuntimeException("Iterator returned null!"));
-			if (nxt.cardinality() == 0)
-				continue;
-
-			int mult = (int)Math.pow(-1, nxt.cardinality());
-			double accum = 1.0;
-
-			for (int row = 0; row < n; row++) {
-				double x = 0;
-				for (int col = 0; col < n; col++) {
-					if (!nxt.get(col))
-						continue;
+		return sum / terms;
+	}
 
-					x += input[row][col];
-				}
+	/**
+	 * Sums the Glynn terms from from (inclusive) to to (exclusive) in Gray-code order. Term
+	 * k uses the sign vector whose bit i - 1 of the Gray code k ^ (k >> 1) is set if d_i is
+	 * -1.
+	 */
+	private static double glynn(double[][] a, long from, long to) {
+		int n = a.length;
+		long gray = from ^ (from >>> 1);
+
+		// the column sums for the first sign vector are built from scratch
+		double[] colSums = new double[n];
+		for (int row = 0; row < n; row++) {
+			double d = (row > 0 && ((gray >>> (row - 1)) & 1) != 0 ? -1.0 : 1.0);
+			for (int col = 0; col < n; col++)
+				colSums[col] += d * a[row][col];
+		}
 
-				accum *= x;
+		boolean negative = (Long.bitCount(gray) & 1) != 0;
+		double total = 0.0;
+		for (long k = from; k < to; k++) {
+			if (k > from) {
+				// Gray code k differs from k - 1 in its lowest set bit
+				int bit = Long.numberOfTrailingZeros(k);
+				double f = (((gray >>> bit) & 1) == 0 ? -2.0 : 2.0);
+				gray ^= 1L << bit;
+				negative = !negative;
+
+				double[] row = a[bit + 1];
+				for (int col = 0; col < n; col++)
+					colSums[col] += f * row[col];
 			}
 
-			collector += mult * accum;
-		}
+			double prod = 1.0;
+			for (int col = 0; col < n; col++)
+				prod *= colSums[col];
 
-		int mult = (int)Math.pow(-1, n);
-		return mult * collector;
+			total += (negative ? -prod : prod);
+		}
 
+		return total;
 	}
 	
 	public static double[] normalize(double[] input) {
@@ -170,30 +284,6 @@ public class MatrixUtils {
 				() -> new BVNRuntimeException("Could not normalize array!"));
 	}
 
-	private static Iterator<BitSet> bitStringsOfSize(int n) {
-		return new Iterator<BitSet>() {
-			private BigInteger b = new BigInteger("0");
-			@Override
-			public boolean hasNext() {
-				return b.compareTo((new BigInteger("2")).pow(n)) < 0;
-			}
-
-			@Override
-			public @NonNull BitSet next() {
-				byte[] bytes = b.toByteArray();
-				BitSet toR = BitSet.valueOf(bytes);
-				BigInteger nxt = b.add(new BigInteger("1"));
-				if (nxt == null || toR == null) {
-					throw new NoSuchElementException("Unable to increment big int");
-				}
-				b = nxt;
-				return toR;
-			}
-
-		};
-	}
-
-
 	public static double[][] clone(double[][] m) {
 		double[][] toR = new double[m.length][];
 
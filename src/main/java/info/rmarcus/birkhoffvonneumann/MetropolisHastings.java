@@ -21,55 +21,176 @@
 package info.rmarcus.birkhoffvonneumann;
 
 import java.util.Random;
+import java.util.SplittableRandom;
 
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNException;
 
+/**
+ * Samples permutations with a Metropolis-Hastings random walk over transpositions. The
+ * target density of a permutation is the product of the matrix entries it selects.
+ * 
+ * The walk works on a permutation array and in log space: swapping the columns of two
+ * rows only changes four entries of the product, so each step costs four lookups instead
+ * of a pass over the whole matrix, and long products do not underflow.
+ *
+ */
 class MetropolisHastings {
 
-	public static double[][] generateSample(Random r, double[][] matrix) throws BVNException {
-		// first, pull out any old permutation
-		double[][] toR = MatrixUtils.randomPermutation(r, matrix.length);
-				
-		double currQ = getPropDensity(toR, matrix);
-		for (int i = 0; i < SamplingAlgorithm.getBurnIn(); i++) {
-			double[][] proposed = MatrixUtils.clone(toR);
-			getNeighbor(r, proposed);
-			
-			double nextQ = getPropDensity(proposed, matrix);
-			double alpha = nextQ / currQ;
-						
-			if (alpha > 1.0 || r.nextDouble() > alpha) {
-				toR = proposed;
-				currQ = nextQ;
+	/**
+	 * The log of the matrix entries, looked up on demand.
+	 */
+	interface LogDensity {
+		int size();
+
+		/**
+		 * @return the log of the entry at row, col (negative infinity for a zero entry)
+		 */
+		double logWeight(int row, int col);
+
+		/**
+		 * @return an upper bound on the number of non-zero entries
+		 */
+		int supportSize();
+
+		/**
+		 * Adds the edges of every non-zero entry of a row to a matcher.
+		 */
+		void addSupport(BipartiteMatcher matcher, int row);
+	}
+
+	static LogDensity of(double[][] matrix) {
+		return new LogDensity() {
+			@Override
+			public int size() {
+				return matrix.length;
 			}
-		}
-		
-		return toR;
-		
+
+			@Override
+			public double logWeight(int row, int col) {
+				return Math.log(matrix[row][col]);
+			}
+
+			@Override
+			public int supportSize() {
+				return matrix.length * matrix.length;
+			}
+
+			@Override
+			public void addSupport(BipartiteMatcher matcher, int row) {
+				for (int col = 0; col < matrix.length; col++) {
+					if (matrix[row][col] > 0)
+						matcher.addEdge(row, col);
+				}
+			}
+		};
 	}
-	
-	private static double getPropDensity(double[][] perm, double[][] matrix) {
-		double collector = 1.0;
-		
-		for (int i = 0; i < perm.length; i++) {
-			for (int j = 0; j < perm[i].length; j++) {
-				if (perm[i][j] >= 1.0)
-					collector *= matrix[i][j];
+
+	static LogDensity of(SparseMatrix matrix) {
+		return new LogDensity() {
+			@Override
+			public int size() {
+				return matrix.size();
+			}
+
+			@Override
+			public double logWeight(int row, int col) {
+				return Math.log(matrix.get(row, col));
+			}
+
+			@Override
+			public int supportSize() {
+				return matrix.getNonZeroCount();
 			}
+
+			@Override
+			public void addSupport(BipartiteMatcher matcher, int row) {
+				for (int i = matrix.getRowStart(row); i < matrix.getRowEnd(row); i++) {
+					if (matrix.getValue(i) > 0)
+						matcher.addEdge(row, matrix.getColumn(i));
+				}
+			}
+		};
+	}
+
+	public static int[] generateSample(Random r, double[][] matrix) throws BVNException {
+		return generateSample(r, of(matrix));
+	}
+
+	public static int[] generateSample(Random r, SparseMatrix matrix) throws BVNException {
+		return generateSample(r, of(matrix));
+	}
+
+	private static int[] generateSample(Random r, LogDensity density) {
+		return new MetropolisHastingsChain(density, new SplittableRandom(r.nextLong())).next();
+	}
+
+	/**
+	 * Checks that a walk can start from perm, and replaces it with a permutation inside the
+	 * support of the matrix if it has zero density.
+	 * 
+	 * @param perm the permutation to start from, which may be modified
+	 * @return perm
+	 */
+	static int[] startingPoint(int[] perm, LogDensity density) {
+		if (logDensity(perm, density) > Double.NEGATIVE_INFINITY)
+			return perm;
+
+		int n = density.size();
+		BipartiteMatcher matcher = new BipartiteMatcher(n, density.supportSize());
+		for (int row = 0; row < n; row++) {
+			matcher.beginRow(row);
+			density.addSupport(matcher, row);
 		}
-		
-		return collector;
+		matcher.repair();
+
+		for (int row = 0; row < n; row++)
+			perm[row] = matcher.getMatchedColumn(row);
+
+		BVNIterator.completePermutation(perm);
+		return perm;
 	}
-	
-	private static void getNeighbor(Random r, double[][] toModify) {
-		// pick a random transposition uniformally and apply it to the matrix.
-		// we just need two row indexes that are not identical.
-		int[] transposition = r.ints(0, toModify.length).distinct().limit(2).toArray();
-		double[] tmp = toModify[transposition[0]];
-		toModify[transposition[0]] = toModify[transposition[1]];
-		toModify[transposition[1]] = tmp;
+
+	/**
+	 * Proposes swapping the columns of two random rows, and accepts the proposal with the
+	 * Metropolis-Hastings probability min(1, q(proposed) / q(current)).
+	 * 
+	 * @return the change in the log density of perm (zero if the proposal was rejected)
+	 */
+	static double step(SplittableRandom r, LogDensity density, int[] perm) {
+		int n = perm.length;
+		if (n < 2)
+			return 0.0;
+
+		// pick two distinct rows uniformly
+		int a = r.nextInt(n);
+		int b = r.nextInt(n - 1);
+		return step(density, perm, a, (b >= a ? b + 1 : b), r.nextDouble());
 	}
-	
+
+	private static double step(LogDensity density, int[] perm, int a, int b, double u) {
+		double delta = density.logWeight(a, perm[b]) + density.logWeight(b, perm[a])
+				- density.logWeight(a, perm[a]) - density.logWeight(b, perm[b]);
+
+		// a NaN delta only happens when both permutations have zero density, in
+		// which case either is as good as the other.
+		if (Double.isNaN(delta) || delta >= 0 || Math.log(u) < delta) {
+			int tmp = perm[a];
+			perm[a] = perm[b];
+			perm[b] = tmp;
+			return (Double.isNaN(delta) ? 0.0 : delta);
+		}
+
+		return 0.0;
+	}
+
+	static double logDensity(int[] perm, LogDensity density) {
+		double collector = 0.0;
+		for (int row = 0; row < perm.length; row++)
+			collector += density.logWeight(row, perm[row]);
+
+		return collector;
+	}
+
 	public static void main(String[] args) throws BVNException {
 		generateSample(new Random(), MatrixUtils.uniformBistoc(5));
 	}
@@ -0,0 +1,247 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+import info.rmarcus.birkhoffvonneumann.MetropolisHastings.LogDensity;
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
+
+/**
+ * A Metropolis-Hastings chain over permutations that persists between samples.
+ * 
+ * The chain burns in once, and after that each sample only costs the thinning interval
+ * in steps. The matrix can be replaced (or modified in place) between samples: the chain
+ * keeps its current permutation, which is already a good starting point if the matrix only
+ * changed a little.
+ * 
+ * Consecutive samples are correlated; a larger thinning interval makes them less so.
+ *
+ */
+public class MetropolisHastingsChain {
+	/**
+	 * Burn in until the chain's log density has stabilized, instead of for a fixed number
+	 * of steps. See MultiChainSampler.
+	 */
+	public static final int ADAPTIVE_BURN_IN = -1;
+
+	private LogDensity density;
+	private final SplittableRandom rand;
+	private int[] current;
+	private double logDensity;
+	private int burnIn = ADAPTIVE_BURN_IN;
+	private int burnInSteps = 0;
+	private int thinning;
+	private boolean burnedIn = false;
+
+	/**
+	 * @param matrix the matrix to sample from. It is read directly, not copied.
+	 * @param seed the seed of the chain's random number generator
+	 */
+	public MetropolisHastingsChain(double[][] matrix, long seed) {
+		this(MetropolisHastings.of(matrix), new SplittableRandom(seed));
+	}
+
+	/**
+	 * @param matrix the matrix to sample from
+	 * @param seed the seed of the chain's random number generator
+	 */
+	public MetropolisHastingsChain(SparseMatrix matrix, long seed) {
+		this(MetropolisHastings.of(matrix), new SplittableRandom(seed));
+	}
+
+	MetropolisHastingsChain(LogDensity density, SplittableRandom rand) {
+		this.density = density;
+		this.rand = rand;
+		this.thinning = Math.max(1, density.size());
+
+		// start from a uniformly random permutation
+		int n = density.size();
+		int[] perm = new int[n];
+		for (int i = 0; i < n; i++)
+			perm[i] = i;
+		for (int i = n - 1; i > 0; i--) {
+			int j = rand.nextInt(i + 1);
+			int tmp = perm[i];
+			perm[i] = perm[j];
+			perm[j] = tmp;
+		}
+
+		current = MetropolisHastings.startingPoint(perm, density);
+		logDensity = MetropolisHastings.logDensity(current, density);
+	}
+
+	/**
+	 * Sets how many steps the chain takes before its first sample. Defaults to
+	 * ADAPTIVE_BURN_IN, which stops once the chain's log density stops drifting.
+	 * @param steps the number of burn-in steps, or ADAPTIVE_BURN_IN
+	 */
+	public void setBurnIn(int steps) {
+		if (steps < 0 && steps != ADAPTIVE_BURN_IN)
+			throw new BVNRuntimeException("Burn-in must be non-negative");
+		this.burnIn = steps;
+	}
+
+	/**
+	 * Sets how many steps the chain takes between samples. Defaults to n.
+	 * @param steps the number of steps between samples
+	 */
+	public void setThinning(int steps) {
+		if (steps < 1)
+			throw new BVNRuntimeException("Thinning must be at least one step");
+		this.thinning = steps;
+	}
+
+	/**
+	 * Points the chain at a new matrix of the same size, keeping its current permutation.
+	 * If that permutation has zero density under the new matrix, the chain restarts from
+	 * the support of the new matrix and burns in again.
+	 * @param matrix the new matrix
+	 */
+	public void setMatrix(double[][] matrix) {
+		setDensity(MetropolisHastings.of(matrix));
+	}
+
+	/**
+	 * Points the chain at a new sparse matrix of the same size, in the same way as
+	 * setMatrix(double[][]).
+	 * @param matrix the new matrix
+	 */
+	public void setMatrix(SparseMatrix matrix) {
+		setDensity(MetropolisHastings.of(matrix));
+	}
+
+	void setDensity(LogDensity density) {
+		if (density.size() != current.length)
+			throw new BVNRuntimeException("Matrix must have the same size as the chain");
+
+		this.density = density;
+		if (MetropolisHastings.logDensity(current, density) == Double.NEGATIVE_INFINITY) {
+			MetropolisHastings.startingPoint(current, density);
+			burnedIn = false;
+		}
+		logDensity = MetropolisHastings.logDensity(current, density);
+	}
+
+	/**
+	 * Advances the chain by the given number of steps.
+	 * @param steps the number of steps
+	 */
+	void advance(int steps) {
+		for (int i = 0; i < steps; i++)
+			logDensity += MetropolisHastings.step(rand, density, current);
+	}
+
+	/**
+	 * Advances the chain by the given number of steps, recording the log density after
+	 * each one.
+	 * 
+	 * @param steps the number of steps
+	 * @param trace receives the log densities
+	 * @param offset where the first log density is written
+	 */
+	void advance(int steps, double[] trace, int offset) {
+		for (int i = 0; i < steps; i++) {
+			logDensity += MetropolisHastings.step(rand, density, current);
+			trace[offset + i] = logDensity;
+		}
+	}
+
+	/**
+	 * Burns in, unless the chain already has.
+	 */
+	void burnIn() {
+		if (burnedIn)
+			return;
+
+		if (burnIn == ADAPTIVE_BURN_IN) {
+			MultiChainSampler.burnIn(new MetropolisHastingsChain[] { this }, null);
+		} else {
+			advance(burnIn);
+			markBurnedIn(burnIn);
+		}
+	}
+
+	void markBurnedIn(int steps) {
+		burnedIn = true;
+		burnInSteps += steps;
+	}
+
+	/**
+	 * Advances the chain to its next sample (burning in first, if needed) and writes it
+	 * into out.
+	 * 
+	 * @param out an array of length at least n that receives the sample
+	 */
+	public void next(int[] out) {
+		if (!burnedIn)
+			burnIn();
+		else
+			advance(thinning);
+
+		System.arraycopy(current, 0, out, 0, current.length);
+	}
+
+	/**
+	 * Advances the chain to its next sample (burning in first, if needed).
+	 * 
+	 * @return the sample, as a permutation array (row i maps to column perm[i])
+	 */
+	public int[] next() {
+		int[] toR = new int[current.length];
+		next(toR);
+		return toR;
+	}
+
+	/**
+	 * @return an infinite stream of samples from this chain
+	 */
+	public Stream<int[]> stream() {
+		return Stream.generate(this::next);
+	}
+
+	/**
+	 * @return the log of the density of the chain's current permutation
+	 */
+	public double getLogDensity() {
+		return logDensity;
+	}
+
+	/**
+	 * @return the total number of burn-in steps this chain has taken
+	 */
+	public int getBurnInSteps() {
+		return burnInSteps;
+	}
+
+	int size() {
+		return current.length;
+	}
+
+	int getThinning() {
+		return thinning;
+	}
+
+	int[] getCurrent() {
+		return current;
+	}
+}
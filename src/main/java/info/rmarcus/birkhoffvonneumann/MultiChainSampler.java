@@ -0,0 +1,328 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import info.rmarcus.birkhoffvonneumann.MetropolisHastings.LogDensity;
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
+
+/**
+ * Runs several independent Metropolis-Hastings chains in parallel on a fork-join pool.
+ * Each chain draws from its own stream split off a single SplittableRandom.
+ * 
+ * Burn-in is adaptive: the chains run in rounds, and stop once the split R-hat of their
+ * log densities over the second half of the burn-in drops below a threshold, i.e. once
+ * the chains (and the two halves of each chain) agree with each other. The same
+ * diagnostics are computed over the samples, along with their effective sample size.
+ *
+ */
+public class MultiChainSampler {
+	public static final double DEFAULT_RHAT_THRESHOLD = 1.05;
+
+	// adaptive burn-in runs at most this many rounds, and at least two
+	private static final int MAX_ROUNDS = 50;
+
+	private final MetropolisHastingsChain[] chains;
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+	private double rHatThreshold = DEFAULT_RHAT_THRESHOLD;
+	private boolean burnedIn = false;
+	private double rHat = Double.NaN;
+	private double ess = Double.NaN;
+
+	/**
+	 * @param matrix the matrix to sample from. It is read directly, not copied.
+	 * @param numChains the number of chains to run
+	 * @param seed the seed the chains' random streams are split from
+	 */
+	public MultiChainSampler(double[][] matrix, int numChains, long seed) {
+		this(MetropolisHastings.of(matrix), numChains, seed);
+	}
+
+	/**
+	 * @param matrix the matrix to sample from
+	 * @param numChains the number of chains to run
+	 * @param seed the seed the chains' random streams are split from
+	 */
+	public MultiChainSampler(SparseMatrix matrix, int numChains, long seed) {
+		this(MetropolisHastings.of(matrix), numChains, seed);
+	}
+
+	private MultiChainSampler(LogDensity density, int numChains, long seed) {
+		if (numChains < 1)
+			throw new BVNRuntimeException("Need at least one chain");
+
+		SplittableRandom root = new SplittableRandom(seed);
+		chains = new MetropolisHastingsChain[numChains];
+		for (int i = 0; i < numChains; i++)
+			chains[i] = new MetropolisHastingsChain(density, root.split());
+	}
+
+	/**
+	 * Sets the pool the chains run on. Defaults to the common pool.
+	 * @param pool the pool
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Sets how many steps each chain takes between samples. Defaults to n.
+	 * @param steps the number of steps between samples
+	 */
+	public void setThinning(int steps) {
+		for (MetropolisHastingsChain c : chains)
+			c.setThinning(steps);
+	}
+
+	/**
+	 * Sets the split R-hat below which burn-in stops. Defaults to DEFAULT_RHAT_THRESHOLD.
+	 * @param threshold the threshold, greater than one
+	 */
+	public void setRHatThreshold(double threshold) {
+		this.rHatThreshold = threshold;
+	}
+
+	/**
+	 * Draws samples from all of the chains, burning them in first if needed. The samples
+	 * are spread evenly over the chains, and each chain's samples are consecutive in the
+	 * result.
+	 * 
+	 * @param count the number of samples to draw
+	 * @return count permutation arrays (row i maps to column perm[i])
+	 */
+	public int[][] sample(int count) {
+		if (count < 0)
+			throw new BVNRuntimeException("count must be non-negative!");
+
+		if (!burnedIn) {
+			burnIn(chains, pool, rHatThreshold);
+			burnedIn = true;
+		}
+
+		int k = chains.length;
+		int perChain = (count + k - 1) / k;
+		int[][] toR = new int[count][];
+		double[][] traces = new double[k][perChain];
+		int[] drawn = new int[k];
+
+		run(pool, k, c -> {
+			int from = Math.min(count, c * perChain);
+			int to = Math.min(count, from + perChain);
+			for (int i = from; i < to; i++) {
+				toR[i] = chains[c].next();
+				traces[c][i - from] = chains[c].getLogDensity();
+			}
+			drawn[c] = to - from;
+		});
+
+		// the diagnostics need chains of equal length, so drop any uneven tail
+		int len = Arrays.stream(drawn).min().orElse(0);
+		rHat = splitRHat(traces, 0, len);
+		ess = effectiveSampleSize(traces, 0, len);
+		return toR;
+	}
+
+	/**
+	 * @return the split R-hat of the log densities of the last batch of samples. Values
+	 * close to one mean the chains agree with each other.
+	 */
+	public double getRHat() {
+		return rHat;
+	}
+
+	/**
+	 * @return the effective sample size of the log densities of the last batch of samples
+	 */
+	public double getEffectiveSampleSize() {
+		return ess;
+	}
+
+	/**
+	 * @return the number of burn-in steps each chain took
+	 */
+	public int getBurnInSteps() {
+		return chains[0].getBurnInSteps();
+	}
+
+	/**
+	 * Burns in a set of chains with the default threshold, running them one after the
+	 * other if pool is null.
+	 * 
+	 * @return the number of steps each chain took
+	 */
+	static int burnIn(MetropolisHastingsChain[] chains, @Nullable ForkJoinPool pool) {
+		return burnIn(chains, pool, DEFAULT_RHAT_THRESHOLD);
+	}
+
+	private static int burnIn(MetropolisHastingsChain[] chains, @Nullable ForkJoinPool pool, double threshold) {
+		int k = chains.length;
+		int n = chains[0].size();
+		int window = Math.max(2 * n, 20);
+		double[][] traces = new double[k][window * MAX_ROUNDS];
+
+		int rounds = 0;
+		while (rounds < MAX_ROUNDS) {
+			int offset = rounds * window;
+			run(pool, k, c -> chains[c].advance(window, traces[c], offset));
+			rounds++;
+
+			// as usual, only the second half of the burn-in is checked
+			int len = rounds * window;
+			if (rounds >= 2 && splitRHat(traces, len / 2, len) < threshold)
+				break;
+		}
+
+		for (MetropolisHastingsChain c : chains)
+			c.markBurnedIn(rounds * window);
+
+		return rounds * window;
+	}
+
+	private static void run(@Nullable ForkJoinPool pool, int k, IntConsumer task) {
+		if (pool == null || k == 1) {
+			for (int c = 0; c < k; c++)
+				task.accept(c);
+			return;
+		}
+
+		pool.submit(() -> IntStream.range(0, k).parallel().forEach(task)).join();
+	}
+
+	/**
+	 * Computes the split R-hat of a set of traces: each trace is split in two, and the
+	 * variance between the halves is compared with the variance within them.
+	 * 
+	 * @param traces one trace per chain
+	 * @param from the first index of each trace to use
+	 * @param to one past the last index of each trace to use
+	 * @return the split R-hat, or 1 if the traces do not vary at all
+	 */
+	static double splitRHat(double[][] traces, int from, int to) {
+		int half = (to - from) / 2;
+		if (half < 2)
+			return Double.NaN;
+
+		int m = traces.length * 2;
+		double[] means = new double[m];
+		double[] vars = new double[m];
+		for (int c = 0; c < traces.length; c++) {
+			for (int h = 0; h < 2; h++) {
+				int start = from + h * half;
+				double mean = 0.0;
+				for (int i = start; i < start + half; i++)
+					mean += traces[c][i];
+				mean /= half;
+
+				double var = 0.0;
+				for (int i = start; i < start + half; i++)
+					var += (traces[c][i] - mean) * (traces[c][i] - mean);
+
+				means[2 * c + h] = mean;
+				vars[2 * c + h] = var / (half - 1);
+			}
+		}
+
+		double grand = Arrays.stream(means).average().orElse(0.0);
+		double b = 0.0;
+		for (double mean : means)
+			b += (mean - grand) * (mean - grand);
+		b *= (double) half / (m - 1);
+
+		double w = Arrays.stream(vars).average().orElse(0.0);
+		if (w == 0.0)
+			return (b == 0.0 ? 1.0 : Double.POSITIVE_INFINITY);
+
+		double varPlus = (half - 1.0) / half * w + b / half;
+		return Math.sqrt(varPlus / w);
+	}
+
+	/**
+	 * Estimates the effective sample size of a set of traces from their autocorrelations,
+	 * summing them in pairs until a pair is negative (Geyer's initial positive sequence).
+	 * 
+	 * @param traces one trace per chain
+	 * @param from the first index of each trace to use
+	 * @param to one past the last index of each trace to use
+	 * @return the effective number of independent samples
+	 */
+	static double effectiveSampleSize(double[][] traces, int from, int to) {
+		int len = to - from;
+		int m = traces.length;
+		if (len < 4)
+			return m * len;
+
+		double[] means = new double[m];
+		double w = 0.0;
+		for (int c = 0; c < m; c++) {
+			for (int i = from; i < to; i++)
+				means[c] += traces[c][i];
+			means[c] /= len;
+
+			double var = 0.0;
+			for (int i = from; i < to; i++)
+				var += (traces[c][i] - means[c]) * (traces[c][i] - means[c]);
+			w += var / (len - 1);
+		}
+		w /= m;
+
+		double grand = Arrays.stream(means).average().orElse(0.0);
+		double b = 0.0;
+		for (double mean : means)
+			b += (mean - grand) * (mean - grand);
+		b = (m > 1 ? b * len / (m - 1) : 0.0);
+
+		double varPlus = (len - 1.0) / len * w + b / len;
+		if (varPlus == 0.0)
+			return m * len;
+
+		double sum = 0.0;
+		for (int t = 1; t + 1 < len; t += 2) {
+			double pair = rho(traces, means, from, to, t, w, varPlus)
+					+ rho(traces, means, from, to, t + 1, w, varPlus);
+			if (pair < 0)
+				break;
+			sum += pair;
+		}
+
+		return m * len / (1.0 + 2.0 * sum);
+	}
+
+	private static double rho(double[][] traces, double[] means, int from, int to, int lag, double w, double varPlus) {
+		int len = to - from;
+		double autocov = 0.0;
+		for (int c = 0; c < traces.length; c++) {
+			double sum = 0.0;
+			for (int i = from; i + lag < to; i++)
+				sum += (traces[c][i] - means[c]) * (traces[c][i + lag] - means[c]);
+			autocov += sum / len;
+		}
+		autocov /= traces.length;
+
+		return 1.0 - (w - autocov) / varPlus;
+	}
+}
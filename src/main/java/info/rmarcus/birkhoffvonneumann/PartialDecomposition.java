@@ -0,0 +1,108 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNException;
+
+/**
+ * The terms of a decomposition that may have been stopped early by a StopPolicy. The
+ * coefficients of the terms found sum to one minus the residual mass; the renormalized
+ * terms scale them to sum to one, giving the distribution over the permutations found.
+ * 
+ * Instances are created by BVNDecomposer.decomposePartial.
+ *
+ */
+public class PartialDecomposition {
+	private final List<CoeffAndPermutation> terms;
+	private final double capturedMass;
+	private final boolean complete;
+
+	PartialDecomposition(List<CoeffAndPermutation> terms, boolean complete) {
+		this.terms = Collections.unmodifiableList(new ArrayList<>(terms));
+		this.complete = complete;
+
+		double total = 0.0;
+		for (CoeffAndPermutation cap : terms)
+			total += cap.coeff;
+		capturedMass = total;
+	}
+
+	/**
+	 * @return the terms found, with the coefficients of the full decomposition
+	 */
+	public List<CoeffAndPermutation> getTerms() {
+		return terms;
+	}
+
+	/**
+	 * @return the terms found, with their coefficients scaled to sum to one
+	 */
+	public List<CoeffAndPermutation> getRenormalizedTerms() {
+		List<CoeffAndPermutation> toR = new ArrayList<>(terms.size());
+		for (CoeffAndPermutation cap : terms)
+			toR.add(new CoeffAndPermutation(cap.coeff / capturedMass, cap.permutation));
+		return toR;
+	}
+
+	/**
+	 * @return the number of terms found
+	 */
+	public int size() {
+		return terms.size();
+	}
+
+	/**
+	 * @return one minus the sum of the coefficients found: the most any missing term
+	 * could weigh
+	 */
+	public double getResidualMass() {
+		return 1.0 - capturedMass;
+	}
+
+	/**
+	 * @return the sum of the coefficients found
+	 */
+	public double getCapturedMass() {
+		return capturedMass;
+	}
+
+	/**
+	 * @return true if the decomposition ran to the end rather than being stopped
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * Prepares the renormalized terms for sampling, in the same way as
+	 * BVNDecomposer.prepare.
+	 * 
+	 * @return a distribution over the permutations found
+	 * @throws BVNException if no terms were found
+	 */
+	public PreparedDistribution toDistribution() throws BVNException {
+		return new PreparedDistribution(terms);
+	}
+}
@@ -0,0 +1,243 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Searches for a decomposition with as few permutations as possible within a time budget.
+ * 
+ * Finding the decomposition with the fewest terms is NP-hard, so this uses the bottleneck
+ * heuristic: at each step, pick the permutation whose smallest entry is as large as possible
+ * (found by binary searching a threshold and checking for a perfect matching among the
+ * entries above it), and subtract it. Each step zeroes at least one entry, so a decomposition
+ * never has more terms than the matrix has non-zero entries. The first attempt is followed by
+ * randomized restarts (which break ties between bottleneck matchings differently) until a
+ * decomposition reaches the lower bound (the largest number of non-zero entries in any row or
+ * column, since each permutation covers only one entry per row and column), until
+ * MAX_STALE_RESTARTS restarts in a row fail to find a shorter decomposition, or until the
+ * budget runs out. The lower bound is rarely reachable on dense matrices, so the budget is only
+ * a cap: most searches end when the restarts stop improving.
+ *
+ */
+class PerfectDecomposer {
+	static final int MAX_STALE_RESTARTS = 16;
+
+	private final SparseMatrix support;
+	private final double[] initial;
+	private final int n;
+	private final int lowerBound;
+	private final BipartiteMatcher matcher;
+	private final double epsilon;
+	private final Random rand = new Random(42);
+	private int staleRestarts;
+
+	/**
+	 * @param support the non-zero entries of the matrix to decompose
+	 * @param values the current value of each entry of support
+	 * @param epsilon entries at or below this value are treated as zero
+	 */
+	PerfectDecomposer(SparseMatrix support, double[] values, double epsilon) {
+		this.support = support;
+		this.epsilon = epsilon;
+		this.n = support.size();
+		this.initial = Arrays.copyOf(values, values.length);
+
+		int bound = 0;
+		int[] colCounts = new int[n];
+		for (int row = 0; row < n; row++) {
+			int rowCount = 0;
+			for (int i = support.getRowStart(row); i < support.getRowEnd(row); i++) {
+				if (values[i] > epsilon) {
+					rowCount++;
+					colCounts[support.getColumn(i)]++;
+				}
+			}
+			bound = Math.max(bound, rowCount);
+		}
+
+		for (int count : colCounts)
+			bound = Math.max(bound, count);
+
+		lowerBound = bound;
+		matcher = new BipartiteMatcher(n, values.length);
+	}
+
+	/**
+	 * Searches for a short decomposition until the restarts stop improving or the time budget
+	 * is spent.
+	 * 
+	 * @param budgetMillis the time budget, in milliseconds
+	 * @return the permutations of the shortest decomposition found, in order, or null if
+	 * the budget ran out before any attempt finished
+	 */
+	@Nullable
+	List<int[]> decompose(long budgetMillis) {
+		long deadline = System.nanoTime() + budgetMillis * 1000000L;
+
+		// each row lists its edges to the matcher starting from its offset
+		int[] rowOffset = new int[n];
+
+		@Nullable List<int[]> best = null;
+		staleRestarts = 0;
+		while (System.nanoTime() < deadline && staleRestarts <= MAX_STALE_RESTARTS) {
+			int limit = (best == null ? Integer.MAX_VALUE : best.size() - 1);
+			@Nullable List<int[]> attempt = attempt(rowOffset, limit, deadline);
+
+			// an attempt only finishes if it is shorter than the best so far
+			if (attempt != null) {
+				best = attempt;
+				staleRestarts = 0;
+				if (best.size() <= lowerBound)
+					break;
+			} else {
+				staleRestarts++;
+			}
+
+			// break ties between bottleneck matchings differently next time
+			for (int row = 0; row < n; row++)
+				rowOffset[row] = rand.nextInt(n);
+		}
+
+		return best;
+	}
+
+	/**
+	 * @return how many attempts in a row, at the end of the last search, did not find a
+	 * shorter decomposition. Above MAX_STALE_RESTARTS, the search stopped because the
+	 * restarts stopped improving.
+	 */
+	int getStaleRestarts() {
+		return staleRestarts;
+	}
+
+	@Nullable
+	private List<int[]> attempt(int[] rowOffset, int maxTerms, long deadline) {
+		double[] m = Arrays.copyOf(initial, initial.length);
+		double[] sorted = new double[m.length];
+		List<int[]> toR = new ArrayList<>();
+		int[] perm = new int[n];
+		int[] seed = new int[n];
+		Arrays.fill(seed, -1);
+
+		while (true) {
+			int numValues = 0;
+			for (double d : m) {
+				if (d > epsilon)
+					sorted[numValues++] = d;
+			}
+
+			if (numValues == 0)
+				return toR;
+
+			if (toR.size() >= maxTerms || System.nanoTime() >= deadline)
+				return null;
+
+			Arrays.sort(sorted, 0, numValues);
+
+			// find the largest threshold that still admits a perfect matching.
+			// sorted[0] always does, unless only dust is left. Every check starts
+			// from the last perfect matching found, restricted to the threshold.
+			int lo = 0;
+			int hi = numValues - 1;
+			if (matchAbove(m, sorted[lo], rowOffset, seed, perm)) {
+				System.arraycopy(perm, 0, seed, 0, n);
+				while (lo < hi) {
+					int mid = (lo + hi + 1) >>> 1;
+					if (matchAbove(m, sorted[mid], rowOffset, seed, perm)) {
+						System.arraycopy(perm, 0, seed, 0, n);
+						lo = mid;
+					} else {
+						hi = mid - 1;
+					}
+				}
+				System.arraycopy(seed, 0, perm, 0, n);
+			} else {
+				// fill in any unmatched rows with the remaining zero columns.
+				BVNIterator.completePermutation(perm);
+			}
+
+			double coeff = Double.POSITIVE_INFINITY;
+			for (int row = 0; row < n; row++) {
+				int i = support.indexOf(row, perm[row]);
+				if (i >= 0 && m[i] > epsilon)
+					coeff = Math.min(coeff, m[i]);
+			}
+
+			// these are the same operations, in the same order, as BVNIterator performs
+			for (int row = 0; row < n; row++) {
+				int i = support.indexOf(row, perm[row]);
+				if (i < 0)
+					continue;
+
+				m[i] -= coeff;
+				if (m[i] < epsilon)
+					m[i] = 0;
+			}
+
+			toR.add(Arrays.copyOf(perm, n));
+			System.arraycopy(perm, 0, seed, 0, n);
+		}
+	}
+
+	private boolean matchAbove(double[] m, double threshold, int[] rowOffset, int[] seed, int[] perm) {
+		matcher.reset();
+		for (int row = 0; row < n; row++) {
+			matcher.beginRow(row);
+
+			int start = support.getRowStart(row);
+			int degree = support.getRowEnd(row) - start;
+			for (int k = 0; k < degree; k++) {
+				int i = start + (k + rowOffset[row]) % degree;
+				if (isEdge(m[i], threshold))
+					matcher.addEdge(row, support.getColumn(i));
+			}
+		}
+
+		for (int row = 0; row < n; row++) {
+			if (seed[row] < 0)
+				continue;
+
+			int i = support.indexOf(row, seed[row]);
+			if (i >= 0 && isEdge(m[i], threshold))
+				matcher.addToMatching(row, seed[row]);
+		}
+
+		matcher.repair();
+
+		boolean perfect = true;
+		for (int row = 0; row < n; row++) {
+			perm[row] = matcher.getMatchedColumn(row);
+			perfect &= perm[row] >= 0;
+		}
+
+		return perfect;
+	}
+
+	private boolean isEdge(double value, double threshold) {
+		return value >= threshold && value > epsilon;
+	}
+}
@@ -0,0 +1,119 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNException;
+
+/**
+ * A decomposition that has been computed once and can be sampled from many times.
+ * Sampling uses a Walker alias table, so each draw takes O(1) time regardless of how
+ * many permutations the decomposition has.
+ * 
+ * Instances are created by BVNDecomposer.prepare.
+ *
+ */
+public class PreparedDistribution {
+	private final List<CoeffAndPermutation> terms;
+	private final double[] prob;
+	private final int[] alias;
+
+	PreparedDistribution(List<CoeffAndPermutation> terms) throws BVNException {
+		if (terms.isEmpty())
+			throw new BVNException("Decomposition has no permutations to sample from.");
+
+		this.terms = Collections.unmodifiableList(new ArrayList<>(terms));
+
+		// Vose's method: scale every coeff so the mean is one, then repeatedly pair a
+		// term below one with a term above one to fill the below-one term's bucket.
+		int k = terms.size();
+		double total = 0.0;
+		for (CoeffAndPermutation cap : terms)
+			total += cap.coeff;
+
+		prob = new double[k];
+		alias = new int[k];
+		int[] small = new int[k];
+		int[] large = new int[k];
+		int numSmall = 0;
+		int numLarge = 0;
+		for (int i = 0; i < k; i++) {
+			prob[i] = terms.get(i).coeff * k / total;
+			alias[i] = i;
+			if (prob[i] < 1.0)
+				small[numSmall++] = i;
+			else
+				large[numLarge++] = i;
+		}
+
+		while (numSmall > 0 && numLarge > 0) {
+			int s = small[--numSmall];
+			int l = large[--numLarge];
+
+			alias[s] = l;
+			prob[l] -= 1.0 - prob[s];
+			if (prob[l] < 1.0)
+				small[numSmall++] = l;
+			else
+				large[numLarge++] = l;
+		}
+
+		// anything left over is only off from one by rounding
+		while (numSmall > 0)
+			prob[small[--numSmall]] = 1.0;
+		while (numLarge > 0)
+			prob[large[--numLarge]] = 1.0;
+	}
+
+	/**
+	 * Randomly samples a permutation, where each permutation of the decomposition is
+	 * drawn with probability equal to its coeff.
+	 * 
+	 * @param r a random number generator
+	 * @return the permutation array (row i maps to column perm[i])
+	 */
+	public int[] samplePermutation(Random r) {
+		int bucket = r.nextInt(prob.length);
+		int term = (r.nextDouble() < prob[bucket] ? bucket : alias[bucket]);
+		return terms.get(term).permutation.clone();
+	}
+
+	/**
+	 * Randomly samples a permutation matrix, in the same way as samplePermutation.
+	 * 
+	 * @param r a random number generator
+	 * @return the permutation matrix
+	 */
+	public double[][] sample(Random r) {
+		return CoeffAndMatrix.fromFlatPerm(samplePermutation(r));
+	}
+
+	/**
+	 * @return the terms of the decomposition, in the order they were found
+	 */
+	public List<CoeffAndPermutation> getTerms() {
+		return terms;
+	}
+}
@@ -21,28 +21,348 @@
 package info.rmarcus.birkhoffvonneumann;
 
 import java.util.Arrays;
-import java.util.stream.IntStream;
+
+import org.eclipse.jdt.annotation.Nullable;
 
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
 
+/**
+ * Balances non-negative square matrices into bistochastic ones with the Sinkhorn-Knopp
+ * algorithm: rows and columns are scaled alternately until every row and column sums to one.
+ * 
+ * Instead of rewriting the matrix on every sweep, the balancer keeps a row scaling vector r
+ * and a column scaling vector c, and only applies them to the matrix once it is done. A
+ * sweep makes two passes over each row, both simple loops over a double[] that the JIT
+ * can unroll and vectorize: one finds the row's sum under the current scaling (which also
+ * checks convergence, for free), and one adds the newly scaled row into the column sums.
+ * Given a pool (see SinkhornOptions.setPool), large matrices are swept in parallel blocks
+ * of rows (see SinkhornSweeper).
+ * 
+ * SinkhornOptions can select an accelerated algorithm instead (see SinkhornAlgorithm).
+ *
+ */
 public class SinkhornBalancer {
 	private SinkhornBalancer() {
 		
 	}
 	
+	/**
+	 * Balances a matrix in place with the default options.
+	 * 
+	 * @param matrix a square, non-negative matrix
+	 * @throws BVNRuntimeException if the matrix is not square or non-negative, or if it
+	 * could not be balanced within the default maximum number of iterations
+	 */
 	public static void balance(double[][] matrix) {
+		SinkhornResult result = balance(matrix, new SinkhornOptions());
+		if (!result.isConverged())
+			throw new BVNRuntimeException("Sinkhorn balancing did not converge: " + result);
+	}
+
+	/**
+	 * Balances a matrix in place. If balancing does not converge within the maximum
+	 * number of iterations, the matrix is left as balanced as it got, and the result
+	 * reports that it did not converge.
+	 * 
+	 * @param matrix a square, non-negative matrix
+	 * @param options the tolerance, maximum number of iterations, and algorithm
+	 * @return the number of iterations, the residual, and the scaling vectors
+	 * @throws BVNRuntimeException if the matrix is not square or non-negative, or has a
+	 * row or column with no positive entries
+	 */
+	public static SinkhornResult balance(double[][] matrix, SinkhornOptions options) {
+		return balance(matrix, options, null);
+	}
+
+	/**
+	 * Balances a matrix in place, starting from the scaling vectors of an earlier result
+	 * instead of from ones (see WarmSinkhornBalancer).
+	 * 
+	 * @param start the result to start from, or null to start from ones. Its vectors are
+	 * copied, not modified.
+	 */
+	static SinkhornResult balance(double[][] matrix, SinkhornOptions options, @Nullable SinkhornResult start) {
 		BVNUtils.checkSquare(matrix);
 		if (!BVNUtils.isNonNeg(matrix)) {
 			throw new BVNRuntimeException("Input to Sinkhorn balancer must be non-negative.");
 		}
-		
-		while (!BVNUtils.isBistochastic(matrix)) {
-				balanceRows(matrix);
-				balanceCols(matrix);
+
+		return balance(new SinkhornSweeper(matrix, options.getPool()), options, start);
+	}
+
+	/**
+	 * Balances a dense matrix in place with the default options.
+	 * 
+	 * @param matrix a non-negative matrix
+	 * @throws BVNRuntimeException if the matrix is not non-negative, or if it could not be
+	 * balanced within the default maximum number of iterations
+	 */
+	public static void balance(DenseMatrix matrix) {
+		SinkhornResult result = balance(matrix, new SinkhornOptions());
+		if (!result.isConverged())
+			throw new BVNRuntimeException("Sinkhorn balancing did not converge: " + result);
+	}
+
+	/**
+	 * Balances a dense matrix in place, like balance(double[][], SinkhornOptions), working
+	 * on its backing array directly.
+	 * 
+	 * @param matrix a non-negative matrix
+	 * @param options the tolerance, maximum number of iterations, and algorithm
+	 * @return the number of iterations, the residual, and the scaling vectors
+	 * @throws BVNRuntimeException if the matrix is not non-negative, or has a row or
+	 * column with no positive entries
+	 */
+	public static SinkhornResult balance(DenseMatrix matrix, SinkhornOptions options) {
+		for (double d : matrix.getData()) {
+			if (d < 0)
+				throw new BVNRuntimeException("Input to Sinkhorn balancer must be non-negative.");
 		}
-		
+
+		return balance(new SinkhornSweeper(matrix, options.getPool()), options, null);
+	}
+
+	private static SinkhornResult balance(SinkhornSweeper sweeper, SinkhornOptions options, @Nullable SinkhornResult start) {
+		int n = sweeper.size();
+		double[] r = startingVector(start == null ? null : start.getRowScaling(), n, 1.0);
+		double[] c = startingVector(start == null ? null : start.getColScaling(), n, 1.0);
+
+		SinkhornResult result;
+		switch (options.getAlgorithm()) {
+		case ANDERSON:
+			result = AndersonBalancer.scale(sweeper, options, c);
+			break;
+		case SINKHORN_KNOPP:
+		default:
+			result = scale(sweeper, options, r, c, start != null);
+			break;
+		}
+
+		sweeper.apply(result.getRowScaling(), result.getColScaling());
+		return result;
+	}
+
+	private static double[] startingVector(double @Nullable [] previous, int n, double fill) {
+		if (previous != null && previous.length == n)
+			return previous.clone();
+
+		double[] toR = new double[n];
+		Arrays.fill(toR, fill);
+		return toR;
+	}
+
+	/**
+	 * Finds the scaling vectors with Sinkhorn-Knopp sweeps, without applying them.
+	 * 
+	 * @param r the starting row scaling, which is updated in place
+	 * @param c the starting column scaling, which is updated in place
+	 * @param warm if true, the columns are checked before the first sweep, so that
+	 * starting from vectors that already balance the matrix takes no sweeps at all
+	 */
+	private static SinkhornResult scale(SinkhornSweeper sweeper, SinkhornOptions options, double[] r, double[] c, boolean warm) {
+		int n = sweeper.size();
+		double tolerance = options.getTolerance().forSize(n);
+		double[] rowSums = new double[n];
+		double[] colSums = new double[n];
+
+		double colResidual = Double.POSITIVE_INFINITY;
+		if (warm) {
+			sweeper.colSums(r, colSums);
+			colResidual = 0.0;
+			for (int col = 0; col < n; col++)
+				colResidual = Math.max(colResidual, Math.abs(c[col] * colSums[col] - 1.0));
+		}
+
+		int iterations = 0;
+		double residual = Double.POSITIVE_INFINITY;
+		while (true) {
+			// after a sweep the columns sum to one (up to rounding), so only the rows need
+			// checking. Their sums under the current c are needed for the next sweep anyway.
+			sweeper.rowSums(c, rowSums);
+			double rowResidual = 0.0;
+			for (int row = 0; row < n; row++)
+				rowResidual = Math.max(rowResidual, Math.abs(r[row] * rowSums[row] - 1.0));
+
+			// before the first sweep, the columns have only been checked on a warm start
+			residual = (iterations > 0 ? rowResidual : Math.max(rowResidual, colResidual));
+
+			if (residual <= tolerance || iterations >= options.getMaxIterations())
+				break;
+
+			for (int row = 0; row < n; row++) {
+				if (rowSums[row] == 0.0)
+					throw new BVNRuntimeException("Row " + row + " has no positive entries and cannot be balanced");
+
+				r[row] = 1.0 / rowSums[row];
+			}
+
+			sweeper.colSums(r, colSums);
+			for (int col = 0; col < n; col++) {
+				if (colSums[col] == 0.0)
+					throw new BVNRuntimeException("Column " + col + " has no positive entries and cannot be balanced");
+
+				c[col] = 1.0 / colSums[col];
+			}
+
+			iterations++;
+		}
+
+		return new SinkhornResult(iterations, residual, residual <= tolerance, r, c);
 	}
 	
+	/**
+	 * Balances a matrix given as the logs of its entries, with the default options. On
+	 * return, logMatrix holds the balanced matrix itself (not its logs).
+	 * 
+	 * @param logMatrix a square matrix of log weights. Negative infinity stands for a zero entry.
+	 * @throws BVNRuntimeException if the matrix is not square, contains NaN or positive
+	 * infinity, or could not be balanced within the default maximum number of iterations
+	 */
+	public static void balanceLog(double[][] logMatrix) {
+		SinkhornResult result = balanceLog(logMatrix, new SinkhornOptions());
+		if (!result.isConverged())
+			throw new BVNRuntimeException("Sinkhorn balancing did not converge: " + result);
+	}
+
+	/**
+	 * Balances a matrix given as the logs of its entries. This is the same algorithm as
+	 * balance, but the scaling vectors are kept as logs and every sum is a log-sum-exp, so
+	 * weights like exp(-1000) that would underflow to zero are balanced correctly. It
+	 * always uses Sinkhorn-Knopp sweeps, whatever algorithm the options select.
+	 * 
+	 * On return, logMatrix holds the balanced matrix itself (not its logs).
+	 * 
+	 * @param logMatrix a square matrix of log weights. Negative infinity stands for a zero entry.
+	 * @param options the tolerance and maximum number of iterations
+	 * @return the number of iterations, the residual, and the scaling vectors, which are
+	 * also logs
+	 * @throws BVNRuntimeException if the matrix is not square, contains NaN or positive
+	 * infinity, or has a row or column with no finite entries
+	 */
+	public static SinkhornResult balanceLog(double[][] logMatrix, SinkhornOptions options) {
+		return balanceLog(logMatrix, options, null);
+	}
+
+	/**
+	 * Balances a matrix given as the logs of its entries, starting from the log scaling
+	 * vectors of an earlier balanceLog result instead of from zeros (see
+	 * WarmSinkhornBalancer).
+	 * 
+	 * @param start the result to start from, or null to start from zeros. Its vectors are
+	 * copied, not modified.
+	 */
+	static SinkhornResult balanceLog(double[][] logMatrix, SinkhornOptions options, @Nullable SinkhornResult start) {
+		BVNUtils.checkSquare(logMatrix);
+		for (double[] row : logMatrix) {
+			for (double d : row) {
+				if (Double.isNaN(d) || d == Double.POSITIVE_INFINITY)
+					throw new BVNRuntimeException("Log weights must be finite or negative infinity.");
+			}
+		}
+
+		int n = logMatrix.length;
+		double tolerance = options.getTolerance().forSize(n);
+		double[] f = startingVector(start == null ? null : start.getRowScaling(), n, 0.0);
+		double[] g = startingVector(start == null ? null : start.getColScaling(), n, 0.0);
+		double[] rowLse = new double[n];
+		double[] colMax = new double[n];
+		double[] colSum = new double[n];
+
+		// as in scale, a warm start checks the columns before the first sweep
+		double colResidual = Double.POSITIVE_INFINITY;
+		if (start != null) {
+			columnLogSumExps(logMatrix, f, colMax, colSum);
+			colResidual = 0.0;
+			for (int col = 0; col < n; col++)
+				colResidual = Math.max(colResidual, Math.abs(Math.exp(g[col] + colMax[col]) * colSum[col] - 1.0));
+		}
+
+		int iterations = 0;
+		double residual = Double.POSITIVE_INFINITY;
+		while (true) {
+			double rowResidual = 0.0;
+			for (int row = 0; row < n; row++) {
+				rowLse[row] = logSumExp(logMatrix[row], g);
+				rowResidual = Math.max(rowResidual, Math.abs(Math.exp(f[row] + rowLse[row]) - 1.0));
+			}
+
+			residual = (iterations > 0 ? rowResidual : Math.max(rowResidual, colResidual));
+
+			if (residual <= tolerance || iterations >= options.getMaxIterations())
+				break;
+
+			for (int row = 0; row < n; row++) {
+				if (rowLse[row] == Double.NEGATIVE_INFINITY)
+					throw new BVNRuntimeException("Row " + row + " has no positive entries and cannot be balanced");
+
+				f[row] = -rowLse[row];
+			}
+
+			columnLogSumExps(logMatrix, f, colMax, colSum);
+			for (int col = 0; col < n; col++) {
+				if (colMax[col] == Double.NEGATIVE_INFINITY)
+					throw new BVNRuntimeException("Column " + col + " has no positive entries and cannot be balanced");
+
+				g[col] = -(colMax[col] + Math.log(colSum[col]));
+			}
+
+			iterations++;
+		}
+
+		for (int row = 0; row < n; row++)
+			for (int col = 0; col < n; col++)
+				logMatrix[row][col] = Math.exp(logMatrix[row][col] + f[row] + g[col]);
+
+		return new SinkhornResult(iterations, residual, residual <= tolerance, f, g);
+	}
+
+	/**
+	 * Computes the log-sum-exp of each column of logMatrix + f, as colMax + log(colSum). The
+	 * sums are accumulated a row at a time, rescaling a column's running sum whenever its
+	 * running maximum grows. A column with no finite entries gets a colMax of negative
+	 * infinity.
+	 */
+	private static void columnLogSumExps(double[][] logMatrix, double[] f, double[] colMax, double[] colSum) {
+		int n = logMatrix.length;
+		for (int col = 0; col < n; col++) {
+			colMax[col] = Double.NEGATIVE_INFINITY;
+			colSum[col] = 0.0;
+		}
+
+		for (int row = 0; row < n; row++) {
+			double[] l = logMatrix[row];
+			for (int col = 0; col < n; col++) {
+				double x = l[col] + f[row];
+				// a zero weight adds nothing, and would make exp(x - colMax) NaN while
+				// colMax is still negative infinity
+				if (x == Double.NEGATIVE_INFINITY)
+					continue;
+
+				if (x <= colMax[col]) {
+					colSum[col] += Math.exp(x - colMax[col]);
+				} else {
+					colSum[col] = colSum[col] * Math.exp(colMax[col] - x) + 1.0;
+					colMax[col] = x;
+				}
+			}
+		}
+	}
+
+	private static double logSumExp(double[] l, double[] g) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < l.length; i++)
+			max = Math.max(max, l[i] + g[i]);
+
+		if (max == Double.NEGATIVE_INFINITY)
+			return max;
+
+		double sum = 0.0;
+		for (int i = 0; i < l.length; i++)
+			sum += Math.exp(l[i] + g[i] - max);
+
+		return max + Math.log(sum);
+	}
+
 	public static void normalize(double[][] matrix, double maxVal) {
 		double min = Double.MAX_VALUE;
 		double max = Double.MIN_VALUE;
@@ -62,33 +382,4 @@ public class SinkhornBalancer {
 			}
 		}
 	}
-	
-	private static void balanceRows(double[][] matrix) {
-		double[] rowSums = Arrays.stream(matrix)
-				.mapToDouble(row -> Arrays.stream(row).sum())
-				.toArray();
-		
-		for (int row = 0; row < matrix.length; row++) {
-			for (int col = 0; col < matrix[row].length; col++) {
-				matrix[row][col] /= rowSums[row];
-			}
-		}
-	}
-	
-	private static void balanceCols(double[][] matrix) {
-		double[] colSums = IntStream.range(0, matrix[0].length)
-		.mapToDouble(col -> {
-			double accum = 0.0;
-			for (int row = 0; row < matrix.length; row++) {
-				accum += matrix[row][col];
-			}
-			return accum;
-		}).toArray();
-		
-		for (int row = 0; row < matrix.length; row++) {
-			for (int col = 0; col < matrix[row].length; col++) {
-				matrix[row][col] /= colSums[col];
-			}
-		}
-	}
 }
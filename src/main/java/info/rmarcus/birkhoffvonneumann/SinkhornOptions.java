@@ -0,0 +1,101 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Options for SinkhornBalancer.
+ *
+ */
+public class SinkhornOptions {
+	public static final int DEFAULT_MAX_ITERATIONS = 100000;
+
+	private Tolerance tolerance = Tolerance.DEFAULT;
+	private int maxIterations = DEFAULT_MAX_ITERATIONS;
+	private SinkhornAlgorithm algorithm = SinkhornAlgorithm.SINKHORN_KNOPP;
+	private @Nullable ForkJoinPool pool = null;
+
+	/**
+	 * Sets how far each row and column sum may be from one once balancing stops, for
+	 * matrices of every size. Defaults to BVNDecomposer.EPSILON, the same tolerance the
+	 * decomposer accepts.
+	 * @param tolerance the tolerance
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = Tolerance.absolute(tolerance);
+	}
+
+	/**
+	 * Sets how far each row and column sum may be from one once balancing stops, which
+	 * may grow with the size of the matrix. Defaults to Tolerance.DEFAULT; using the same
+	 * tolerance as the BVNDecomposer means balanced matrices are always accepted by it.
+	 * @param tolerance the tolerance
+	 */
+	public void setTolerance(Tolerance tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Sets the most sweeps (one row and one column scaling each) balancing may take.
+	 * Defaults to DEFAULT_MAX_ITERATIONS.
+	 * @param maxIterations the maximum number of sweeps
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Sets the balancing algorithm. Defaults to SINKHORN_KNOPP.
+	 * @param algorithm the algorithm
+	 */
+	public void setAlgorithm(SinkhornAlgorithm algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	/**
+	 * Sets the pool that sweeps over large matrices run on, or null to balance on the
+	 * calling thread. Defaults to null. Both algorithms use the pool for matrices with at
+	 * least 256 rows.
+	 * @param pool the pool
+	 */
+	public void setPool(@Nullable ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public Tolerance getTolerance() {
+		return tolerance;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public SinkhornAlgorithm getAlgorithm() {
+		return algorithm;
+	}
+
+	public @Nullable ForkJoinPool getPool() {
+		return pool;
+	}
+}
@@ -0,0 +1,76 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+/**
+ * The outcome of a SinkhornBalancer run. The balanced matrix is diag(rowScaling) * A *
+ * diag(colScaling), where A is the input matrix.
+ *
+ */
+public class SinkhornResult {
+	private final int iterations;
+	private final double residual;
+	private final boolean converged;
+	private final double[] rowScaling;
+	private final double[] colScaling;
+
+	SinkhornResult(int iterations, double residual, boolean converged, double[] rowScaling, double[] colScaling) {
+		this.iterations = iterations;
+		this.residual = residual;
+		this.converged = converged;
+		this.rowScaling = rowScaling;
+		this.colScaling = colScaling;
+	}
+
+	/**
+	 * @return the number of sweeps taken
+	 */
+	public int getIterations() {
+		return iterations;
+	}
+
+	/**
+	 * @return the largest distance of a row or column sum from one
+	 */
+	public double getResidual() {
+		return residual;
+	}
+
+	/**
+	 * @return true if the residual is within the tolerance
+	 */
+	public boolean isConverged() {
+		return converged;
+	}
+
+	public double[] getRowScaling() {
+		return rowScaling;
+	}
+
+	public double[] getColScaling() {
+		return colScaling;
+	}
+
+	@Override
+	public String toString() {
+		return "SinkhornResult(iterations=" + iterations + ", residual=" + residual + ", converged=" + converged + ")";
+	}
+}
@@ -0,0 +1,189 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Computes the row sums A c and the column sums A^T r of a matrix under scaling vectors,
+ * the two halves of a Sinkhorn sweep, optionally on a fork-join pool.
+ * 
+ * The matrix may be a jagged double[][] or a flat DenseMatrix. Either way, row i is read
+ * from rows[i] starting at offsets[i], so the loops are the same for both.
+ * 
+ * The rows are split into one contiguous block per worker. For the row sums each block
+ * just writes its own entries. For the column sums each block accumulates its rows into a
+ * private partial sum, so workers never write to shared memory, and the partial sums are
+ * then added up in parallel over column ranges. Both passes read the matrix row by row;
+ * the column pass also works through the columns in tiles, so that the slice of the
+ * partial sum being accumulated into stays in cache while the block's rows stream past.
+ *
+ */
+class SinkhornSweeper {
+	/**
+	 * Matrices with fewer rows than this are always swept on the calling thread, since a
+	 * sweep is then too cheap to be worth splitting.
+	 */
+	static final int PARALLEL_THRESHOLD = 256;
+
+	/**
+	 * The fewest rows a block gets.
+	 */
+	private static final int MIN_BLOCK_ROWS = 64;
+
+	/**
+	 * The number of columns (8KB of doubles) accumulated at a time.
+	 */
+	private static final int COLUMN_TILE = 1024;
+
+	private final int n;
+	private final double[][] rows;
+	private final int[] offsets;
+	private final @Nullable ForkJoinPool pool;
+	private final int blocks;
+	private final double[][] partials;
+
+	SinkhornSweeper(double[][] matrix, @Nullable ForkJoinPool pool) {
+		this(matrix.length, matrix, new int[matrix.length], pool);
+	}
+
+	SinkhornSweeper(DenseMatrix matrix, @Nullable ForkJoinPool pool) {
+		this(matrix.size(), flatRows(matrix), flatOffsets(matrix), pool);
+	}
+
+	private SinkhornSweeper(int n, double[][] rows, int[] offsets, @Nullable ForkJoinPool pool) {
+		this.n = n;
+		this.rows = rows;
+		this.offsets = offsets;
+
+		if (pool == null || n < PARALLEL_THRESHOLD) {
+			this.pool = null;
+			this.blocks = 1;
+			this.partials = new double[0][];
+		} else {
+			this.pool = pool;
+			this.blocks = Math.max(1, Math.min(pool.getParallelism(), n / MIN_BLOCK_ROWS));
+			this.partials = new double[blocks][n];
+		}
+	}
+
+	private static double[][] flatRows(DenseMatrix matrix) {
+		double[][] toR = new double[matrix.size()][];
+		for (int row = 0; row < toR.length; row++)
+			toR[row] = matrix.getData();
+		return toR;
+	}
+
+	private static int[] flatOffsets(DenseMatrix matrix) {
+		int[] toR = new int[matrix.size()];
+		for (int row = 0; row < toR.length; row++)
+			toR[row] = matrix.rowOffset(row);
+		return toR;
+	}
+
+	int size() {
+		return n;
+	}
+
+	/**
+	 * Sets out[row] to the dot product of row and c.
+	 */
+	void rowSums(double[] c, double[] out) {
+		run(b -> {
+			for (int row = blockStart(b); row < blockStart(b + 1); row++) {
+				double[] a = rows[row];
+				int offset = offsets[row];
+				double sum = 0.0;
+				for (int col = 0; col < n; col++)
+					sum += a[offset + col] * c[col];
+				out[row] = sum;
+			}
+		});
+	}
+
+	/**
+	 * Sets out[col] to the sum over the rows of r[row] * matrix[row][col].
+	 */
+	void colSums(double[] r, double[] out) {
+		if (blocks == 1) {
+			accumulate(0, r, out);
+			return;
+		}
+
+		run(b -> accumulate(b, r, partials[b]));
+		run(b -> {
+			for (int col = blockStart(b); col < blockStart(b + 1); col++) {
+				double sum = 0.0;
+				for (double[] partial : partials)
+					sum += partial[col];
+				out[col] = sum;
+			}
+		});
+	}
+
+	/**
+	 * Multiplies each entry of the matrix by r[row] * c[col], in place.
+	 */
+	void apply(double[] r, double[] c) {
+		run(b -> {
+			for (int row = blockStart(b); row < blockStart(b + 1); row++) {
+				double[] a = rows[row];
+				int offset = offsets[row];
+				for (int col = 0; col < n; col++)
+					a[offset + col] *= r[row] * c[col];
+			}
+		});
+	}
+
+	private void accumulate(int block, double[] r, double[] out) {
+		for (int col = 0; col < n; col++)
+			out[col] = 0.0;
+
+		for (int tile = 0; tile < n; tile += COLUMN_TILE) {
+			int tileEnd = Math.min(n, tile + COLUMN_TILE);
+			for (int row = blockStart(block); row < blockStart(block + 1); row++) {
+				double s = r[row];
+				double[] a = rows[row];
+				int offset = offsets[row];
+				for (int col = tile; col < tileEnd; col++)
+					out[col] += s * a[offset + col];
+			}
+		}
+	}
+
+	private int blockStart(int block) {
+		return (int) ((long) block * n / blocks);
+	}
+
+	private void run(IntConsumer task) {
+		ForkJoinPool p = pool;
+		if (p == null || blocks == 1) {
+			task.accept(0);
+			return;
+		}
+
+		p.submit(() -> IntStream.range(0, blocks).parallel().forEach(task)).join();
+	}
+}
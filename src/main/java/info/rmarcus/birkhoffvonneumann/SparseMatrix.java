@@ -0,0 +1,279 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import java.util.Arrays;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
+
+/**
+ * A square matrix stored in compressed sparse row (CSR) form. Only the non-zero
+ * entries are stored: the entries of row i are at positions getRowStart(i) (inclusive)
+ * to getRowEnd(i) (exclusive), sorted by column.
+ * 
+ * Memory use and the work done by the decomposer and samplers on a SparseMatrix
+ * scale with the number of non-zero entries instead of n^2.
+ *
+ */
+public class SparseMatrix {
+	private final int n;
+	private final int[] rowStart;
+	private final int[] cols;
+	private final double[] values;
+
+	/**
+	 * Creates a sparse matrix from CSR arrays. The arrays are used directly, not copied.
+	 * 
+	 * @param n the number of rows and columns
+	 * @param rowStart n + 1 offsets into cols and values, where row i occupies rowStart[i] to rowStart[i+1]
+	 * @param cols the column of each entry, sorted within each row
+	 * @param values the value of each entry
+	 */
+	public SparseMatrix(int n, int[] rowStart, int[] cols, double[] values) {
+		if (rowStart.length != n + 1 || rowStart[0] != 0 || cols.length != values.length
+				|| rowStart[n] != cols.length)
+			throw new BVNRuntimeException("Malformed CSR arrays for a " + n + "x" + n + " matrix");
+
+		for (int row = 0; row < n; row++) {
+			if (rowStart[row] > rowStart[row + 1])
+				throw new BVNRuntimeException("Row offsets must be non-decreasing");
+
+			for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+				if (cols[i] < 0 || cols[i] >= n)
+					throw new BVNRuntimeException("Column index " + cols[i] + " out of range");
+
+				if (i > rowStart[row] && cols[i] <= cols[i - 1])
+					throw new BVNRuntimeException("Columns must be sorted and unique within each row");
+			}
+		}
+
+		this.n = n;
+		this.rowStart = rowStart;
+		this.cols = cols;
+		this.values = values;
+	}
+
+	/**
+	 * Creates a sparse matrix holding the non-zero entries of a dense matrix.
+	 * 
+	 * @param matrix a square matrix
+	 * @return the sparse matrix
+	 */
+	public static SparseMatrix fromDense(double[][] matrix) {
+		int n = matrix.length;
+		int nnz = 0;
+		for (double[] row : matrix) {
+			if (row.length != n)
+				throw new BVNRuntimeException("Matrix must be square");
+
+			for (double d : row)
+				if (d != 0.0)
+					nnz++;
+		}
+
+		int[] rowStart = new int[n + 1];
+		int[] cols = new int[nnz];
+		double[] values = new double[nnz];
+		int pos = 0;
+		for (int row = 0; row < n; row++) {
+			rowStart[row] = pos;
+			for (int col = 0; col < n; col++) {
+				if (matrix[row][col] == 0.0)
+					continue;
+
+				cols[pos] = col;
+				values[pos] = matrix[row][col];
+				pos++;
+			}
+		}
+		rowStart[n] = pos;
+
+		return new SparseMatrix(n, rowStart, cols, values);
+	}
+
+	/**
+	 * Creates a sparse matrix holding the non-zero entries of a DenseMatrix.
+	 * 
+	 * @param matrix a dense matrix
+	 * @return the sparse matrix
+	 */
+	public static SparseMatrix fromDense(DenseMatrix matrix) {
+		int n = matrix.size();
+		double[] data = matrix.getData();
+		int nnz = 0;
+		for (double d : data)
+			if (d != 0.0)
+				nnz++;
+
+		int[] rowStart = new int[n + 1];
+		int[] cols = new int[nnz];
+		double[] values = new double[nnz];
+		int pos = 0;
+		for (int row = 0; row < n; row++) {
+			rowStart[row] = pos;
+			int offset = matrix.rowOffset(row);
+			for (int col = 0; col < n; col++) {
+				if (data[offset + col] == 0.0)
+					continue;
+
+				cols[pos] = col;
+				values[pos] = data[offset + col];
+				pos++;
+			}
+		}
+		rowStart[n] = pos;
+
+		return new SparseMatrix(n, rowStart, cols, values);
+	}
+
+	/**
+	 * Creates a sparse matrix from coordinate (COO) triples, which may be in any order.
+	 * Duplicate coordinates are summed, and entries that are zero are dropped.
+	 * 
+	 * @param n the number of rows and columns
+	 * @param rows the row of each entry
+	 * @param cols the column of each entry
+	 * @param values the value of each entry
+	 * @return the sparse matrix
+	 */
+	public static SparseMatrix fromCoordinates(int n, int[] rows, int[] cols, double[] values) {
+		if (rows.length != cols.length || rows.length != values.length)
+			throw new BVNRuntimeException("Coordinate arrays must have the same length");
+
+		// counting sort by row, then sort each row by column
+		int[] rowStart = new int[n + 1];
+		for (int row : rows) {
+			if (row < 0 || row >= n)
+				throw new BVNRuntimeException("Row index " + row + " out of range");
+			rowStart[row + 1]++;
+		}
+
+		for (int row = 0; row < n; row++)
+			rowStart[row + 1] += rowStart[row];
+
+		int[] next = Arrays.copyOf(rowStart, n);
+		long[] keys = new long[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			if (cols[i] < 0 || cols[i] >= n)
+				throw new BVNRuntimeException("Column index " + cols[i] + " out of range");
+
+			// the column in the high bits, the original index in the low bits
+			keys[next[rows[i]]++] = ((long) cols[i] << 32) | i;
+		}
+
+		int[] csrStart = new int[n + 1];
+		int[] csrCols = new int[rows.length];
+		double[] csrValues = new double[rows.length];
+		int pos = 0;
+		for (int row = 0; row < n; row++) {
+			Arrays.sort(keys, rowStart[row], rowStart[row + 1]);
+			csrStart[row] = pos;
+
+			for (int i = rowStart[row]; i < rowStart[row + 1]; i++) {
+				int col = (int) (keys[i] >>> 32);
+				double value = values[(int) keys[i]];
+
+				if (pos > csrStart[row] && csrCols[pos - 1] == col) {
+					csrValues[pos - 1] += value;
+				} else {
+					csrCols[pos] = col;
+					csrValues[pos] = value;
+					pos++;
+				}
+			}
+
+			// drop entries that are (or summed to) zero
+			int kept = csrStart[row];
+			for (int i = csrStart[row]; i < pos; i++) {
+				if (csrValues[i] == 0.0)
+					continue;
+				csrCols[kept] = csrCols[i];
+				csrValues[kept] = csrValues[i];
+				kept++;
+			}
+			pos = kept;
+		}
+		csrStart[n] = pos;
+
+		return new SparseMatrix(n, csrStart, Arrays.copyOf(csrCols, pos), Arrays.copyOf(csrValues, pos));
+	}
+
+	/**
+	 * @return the number of rows (and columns) of the matrix
+	 */
+	public int size() {
+		return n;
+	}
+
+	public int getNonZeroCount() {
+		return cols.length;
+	}
+
+	public int getRowStart(int row) {
+		return rowStart[row];
+	}
+
+	public int getRowEnd(int row) {
+		return rowStart[row + 1];
+	}
+
+	/**
+	 * @param idx the position of an entry, between 0 and getNonZeroCount()
+	 * @return the column of the entry
+	 */
+	public int getColumn(int idx) {
+		return cols[idx];
+	}
+
+	/**
+	 * @param idx the position of an entry, between 0 and getNonZeroCount()
+	 * @return the value of the entry
+	 */
+	public double getValue(int idx) {
+		return values[idx];
+	}
+
+	/**
+	 * Finds the position of an entry by binary searching its row.
+	 * 
+	 * @param row the row
+	 * @param col the column
+	 * @return the position of the entry, or -1 if the entry is zero
+	 */
+	public int indexOf(int row, int col) {
+		int idx = Arrays.binarySearch(cols, rowStart[row], rowStart[row + 1], col);
+		return idx < 0 ? -1 : idx;
+	}
+
+	public double get(int row, int col) {
+		int idx = indexOf(row, col);
+		return idx < 0 ? 0.0 : values[idx];
+	}
+
+	public double[][] toDense() {
+		double[][] toR = new double[n][n];
+		for (int row = 0; row < n; row++)
+			for (int i = rowStart[row]; i < rowStart[row + 1]; i++)
+				toR[row][cols[i]] = values[i];
+
+		return toR;
+	}
+}
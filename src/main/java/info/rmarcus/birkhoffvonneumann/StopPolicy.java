@@ -0,0 +1,95 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
+
+/**
+ * When BVNDecomposer.decomposePartial stops looking for more terms. The decomposition
+ * stops as soon as any of the limits is reached; by default there are none, and the
+ * whole decomposition is found. At least one term is always found.
+ *
+ */
+public class StopPolicy {
+	private int maxTerms = Integer.MAX_VALUE;
+	private double residualMass = 0.0;
+	private long timeLimit = Long.MAX_VALUE;
+
+	/**
+	 * Sets the most terms the decomposition may have.
+	 * @param maxTerms the maximum number of terms
+	 */
+	public void setMaxTerms(int maxTerms) {
+		if (maxTerms < 1)
+			throw new BVNRuntimeException("Need at least one term");
+		this.maxTerms = maxTerms;
+	}
+
+	/**
+	 * Sets the residual mass (one minus the sum of the coefficients found so far) at
+	 * which the decomposition stops, since the remaining terms could carry at most that
+	 * much of the distribution between them.
+	 * @param residualMass the residual mass, between zero and one
+	 */
+	public void setResidualMass(double residualMass) {
+		if (residualMass < 0.0 || residualMass > 1.0)
+			throw new BVNRuntimeException("Residual mass must be between zero and one");
+		this.residualMass = residualMass;
+	}
+
+	/**
+	 * Sets how long the decomposition may run. The limit is checked between terms, so
+	 * the decomposition can overrun it by the time one term takes.
+	 * @param millis the time limit, in milliseconds
+	 */
+	public void setTimeLimit(long millis) {
+		if (millis < 0)
+			throw new BVNRuntimeException("Time limit must not be negative");
+		this.timeLimit = millis;
+	}
+
+	public int getMaxTerms() {
+		return maxTerms;
+	}
+
+	public double getResidualMass() {
+		return residualMass;
+	}
+
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	/**
+	 * @param terms the number of terms found so far
+	 * @param residualMass one minus the sum of their coefficients
+	 * @param elapsedMillis how long the decomposition has run
+	 * @return true if no more terms should be found
+	 */
+	boolean shouldStop(int terms, double residualMass, long elapsedMillis) {
+		if (terms == 0)
+			return false;
+
+		return terms >= maxTerms
+				|| residualMass <= this.residualMass
+				|| elapsedMillis >= timeLimit;
+	}
+}
@@ -0,0 +1,79 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
+
+/**
+ * How far from exact a value may be and still count: how far a row or column sum may be
+ * from one for a matrix to count as bistochastic (or balanced), and how small a residual
+ * entry must be for a decomposition to treat it as zero.
+ * 
+ * The tolerance for an n x n matrix is absolute + relative * n. Row and column sums add
+ * up n entries, and each entry of a residual matrix has had up to n terms subtracted from
+ * it, so rounding errors grow with n; a relative part lets large matrices drift further
+ * before their tail entries become terms of their own. The default is an absolute
+ * tolerance of BVNDecomposer.EPSILON with no relative part.
+ *
+ */
+public class Tolerance {
+	public static final Tolerance DEFAULT = new Tolerance(BVNDecomposer.EPSILON, 0.0);
+
+	private final double absolute;
+	private final double relative;
+
+	/**
+	 * @param absolute the part of the tolerance that is the same for every size
+	 * @param relative the part of the tolerance per row of the matrix
+	 */
+	public Tolerance(double absolute, double relative) {
+		if (absolute < 0.0 || relative < 0.0)
+			throw new BVNRuntimeException("Tolerances must not be negative");
+		if (absolute == 0.0 && relative == 0.0)
+			throw new BVNRuntimeException("Tolerance must not be zero");
+		this.absolute = absolute;
+		this.relative = relative;
+	}
+
+	/**
+	 * @param absolute the tolerance for every size
+	 * @return a tolerance with no relative part
+	 */
+	public static Tolerance absolute(double absolute) {
+		return new Tolerance(absolute, 0.0);
+	}
+
+	public double getAbsolute() {
+		return absolute;
+	}
+
+	public double getRelative() {
+		return relative;
+	}
+
+	/**
+	 * @param n the number of rows of the matrix
+	 * @return the tolerance for an n x n matrix
+	 */
+	public double forSize(int n) {
+		return absolute + relative * n;
+	}
+}
@@ -0,0 +1,104 @@
+// < begin copyright > 
+// Copyright Ryan Marcus 2017
+// 
+// This file is part of birkhoffvonneumann.
+// 
+// birkhoffvonneumann is free software: you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation, either version 3 of the License, or
+// (at your option) any later version.
+// 
+// birkhoffvonneumann is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+// 
+// You should have received a copy of the GNU General Public License
+// along with birkhoffvonneumann.  If not, see <http://www.gnu.org/licenses/>.
+// 
+// < end copyright > 
+ 
+package info.rmarcus.birkhoffvonneumann;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
+
+/**
+ * A Sinkhorn balancer that remembers the scaling vectors of its last call and starts the
+ * next call from them. When the matrices being balanced only change a little from one
+ * call to the next, as the weights of an online learner do, the old vectors nearly balance
+ * the new matrix and only a few sweeps are needed; balancing the same matrix twice takes
+ * none.
+ * 
+ * The vectors are forgotten if the size of the matrix changes, or if calls switch between
+ * balance and balanceLog (whose vectors are logs). A balancer is not thread safe.
+ *
+ */
+public class WarmSinkhornBalancer {
+	private final SinkhornOptions options;
+	private @Nullable SinkhornResult last = null;
+	private boolean lastWasLog = false;
+
+	public WarmSinkhornBalancer() {
+		this(new SinkhornOptions());
+	}
+
+	/**
+	 * @param options the options each call uses
+	 */
+	public WarmSinkhornBalancer(SinkhornOptions options) {
+		this.options = options;
+	}
+
+	/**
+	 * Balances a matrix in place, like SinkhornBalancer.balance, starting from the last
+	 * call's scaling vectors.
+	 * 
+	 * @param matrix a square, non-negative matrix
+	 * @return the number of iterations, the residual, and the scaling vectors
+	 * @throws BVNRuntimeException if the matrix is not square or non-negative, or has a
+	 * row or column with no positive entries
+	 */
+	public SinkhornResult balance(double[][] matrix) {
+		SinkhornResult result = SinkhornBalancer.balance(matrix, options, startFor(matrix.length, false));
+		remember(result, false);
+		return result;
+	}
+
+	/**
+	 * Balances a matrix given as the logs of its entries, like SinkhornBalancer.balanceLog,
+	 * starting from the last call's log scaling vectors.
+	 * 
+	 * @param logMatrix a square matrix of log weights. On return, it holds the balanced matrix.
+	 * @return the number of iterations, the residual, and the log scaling vectors
+	 * @throws BVNRuntimeException if the matrix is not square, contains NaN or positive
+	 * infinity, or has a row or column with no finite entries
+	 */
+	public SinkhornResult balanceLog(double[][] logMatrix) {
+		SinkhornResult result = SinkhornBalancer.balanceLog(logMatrix, options, startFor(logMatrix.length, true));
+		remember(result, true);
+		return result;
+	}
+
+	/**
+	 * Forgets the last call's scaling vectors, so the next call starts from scratch.
+	 */
+	public void reset() {
+		last = null;
+	}
+
+	private @Nullable SinkhornResult startFor(int n, boolean log) {
+		SinkhornResult previous = last;
+		if (previous == null || lastWasLog != log || previous.getRowScaling().length != n)
+			return null;
+
+		return previous;
+	}
+
+	private void remember(SinkhornResult result, boolean log) {
+		// a run that did not converge may have wandered off, so start over next time
+		last = (result.isConverged() ? result : null);
+		lastWasLog = log;
+	}
+}
@@ -27,6 +27,8 @@ import java.util.logging.Logger;
 
 import info.rmarcus.birkhoffvonneumann.BVNDecomposer;
 import info.rmarcus.birkhoffvonneumann.SinkhornBalancer;
+import info.rmarcus.birkhoffvonneumann.SinkhornResult;
+import info.rmarcus.birkhoffvonneumann.WarmSinkhornBalancer;
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNException;
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
 
@@ -39,6 +41,7 @@ public class PermELearn {
 	private double learningRate;
 	private Random r = new Random(30);
 	private BVNDecomposer bvn;
+	private WarmSinkhornBalancer balancer = new WarmSinkhornBalancer();
 
 	public PermELearn(int numItems, double learningRate) {
 		w = new double[numItems][numItems];
@@ -93,12 +96,18 @@ public class PermELearn {
 
 	public void updateWeights(double[][] lossMatrix) {
 		checkLossMatrix(lossMatrix);
+		// balance the log weights directly: with large learning rates or losses,
+		// exponentiating first would underflow to zero
 		for (int i = 0; i < w.length; i++)
 			for (int j = 0; j < w.length; j++)
-				w[i][j] = Math.exp(-1.0 * learningRate * lossMatrix[i][j]);
+				w[i][j] = -1.0 * learningRate * lossMatrix[i][j];
 		
 		try {
-			SinkhornBalancer.balance(w);
+			// consecutive loss matrices are usually similar, so the balancer starts from
+			// the last update's scaling
+			SinkhornResult result = balancer.balanceLog(w);
+			if (!result.isConverged())
+				throw new BVNRuntimeException("Sinkhorn balancing did not converge: " + result);
 		} catch (BVNRuntimeException e) {
 			l.log(Level.WARNING, "Error in updateWeights", e);
 			throw new BVNRuntimeException("error while updating weight matrix: " + e.getMessage());
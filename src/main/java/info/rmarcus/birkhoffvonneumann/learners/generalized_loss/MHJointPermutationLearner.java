@@ -47,6 +47,7 @@ public class MHJointPermutationLearner {
 	private BirkhoffPolytope[] bp;
 	private ToDoubleFunction<List<double[][]>> loss;
 	private Random r;
+	private BVNDecomposer bvn;
 
 	private double bestLoss;
 	private List<double[][]> best;
@@ -63,6 +64,8 @@ public class MHJointPermutationLearner {
 
 		this.loss = loss;
 		r = new Random(42);
+		bvn = new BVNDecomposer();
+		bvn.setSamplingAlgorithm(SamplingAlgorithm.GIBBS);
 
 		best = Arrays.stream(dims)
 				.mapToObj(i -> MatrixUtils.uniformBistoc(i))
@@ -74,10 +77,6 @@ public class MHJointPermutationLearner {
 	}
 
 	private double modifiedLoss(List<double[][]> bistocs) {
-		BVNDecomposer bvn = new BVNDecomposer();
-		bvn.setSamplingAlgorithm(SamplingAlgorithm.GIBBS);
-		
-
 		double collector = 0.0;
 
 		try {
@@ -36,28 +36,41 @@ public class MetropolisHastingsPermutationSearch implements PermutationLearner {
 	private double bestLoss = Double.POSITIVE_INFINITY;
 	private double[][] bestPerm;
 	private Random r = new Random(42);
+	private BVNDecomposer bvn = new BVNDecomposer();
+	private int[] sample;
+	private double[][] samplePerm;
 
 	private MetropolisHastingsBistochasticSearch mhbs;
 
 	public MetropolisHastingsPermutationSearch(int n, ToDoubleFunction<double[][]> loss) {
 		this.loss = loss;
 		bestPerm = MatrixUtils.identity(n);
+		bvn.setSamplingAlgorithm(SamplingAlgorithm.GIBBS);
+		sample = new int[n];
+		samplePerm = new double[n][n];
 		mhbs = new MetropolisHastingsBistochasticSearch(n, this::loss);
 	}
 
 	private double loss(double[][] bistoc) {
-		BVNDecomposer bvn = new BVNDecomposer();
-		bvn.setSamplingAlgorithm(SamplingAlgorithm.GIBBS);
 		double collector = 0.0;
 
 		try {
 			for (int i = 0; i < SAMPLES_PER_MATRIX; i++) {
-				double[][] perm = bvn.sample(r, bistoc);
-				double realizedLoss = this.loss.applyAsDouble(perm);
+				// samples are drawn into the same buffers every time, and only
+				// copied when a new best is found
+				for (int row = 0; row < sample.length; row++)
+					samplePerm[row][sample[row]] = 0.0;
+
+				bvn.samplePermutation(r, bistoc, sample);
+
+				for (int row = 0; row < sample.length; row++)
+					samplePerm[row][sample[row]] = 1.0;
+
+				double realizedLoss = this.loss.applyAsDouble(samplePerm);
 
 				if (realizedLoss < bestLoss) {
 					bestLoss = realizedLoss;
-					bestPerm = perm;
+					bestPerm = MatrixUtils.clone(samplePerm);
 					System.out.println("New best: " + bestLoss);
 				}
 				collector += realizedLoss;
@@ -88,9 +88,7 @@ public class TwobyTwoRectangleBirkhoffPolytope implements BirkhoffPolytope {
 			throw new BVNRuntimeException("Increment inc must be 0 <= inc < 1");
 		}
 
-		double[][] tmp = new double[n][n];
-		MatrixUtils.multiply(tmp, direction, inc);
-		MatrixUtils.add(currPoint, currPoint, tmp);
+		MatrixUtils.addScaled(currPoint, direction, inc);
 
 	}
 
@@ -127,9 +127,7 @@ public class VertexCurveBirkhoffPolytope implements BirkhoffPolytope {
 			throw new BVNRuntimeException("Increment inc must be 0 <= inc < 1");
 		}
 		
-		double[][] tmp = new double[n][n];
-		MatrixUtils.multiply(tmp, direction, inc);
-		MatrixUtils.add(point, point, tmp);
+		MatrixUtils.addScaled(point, direction, inc);
 	}
 
 	public static void main(String[] args) throws BVNException {
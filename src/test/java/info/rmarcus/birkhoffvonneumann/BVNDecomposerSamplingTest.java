@@ -20,8 +20,10 @@
  
 package info.rmarcus.birkhoffvonneumann;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import org.junit.Test;
@@ -74,5 +76,59 @@ public class BVNDecomposerSamplingTest {
 
 	}
 
+	@Test
+	public void methodIsValidSparse() throws BVNException {
+		BVNDecomposer d = new BVNDecomposer();
+		d.setSamplingAlgorithm(algo);
+
+		// shuffled 5x5 uniform blocks, so that sampling row by row never gets stuck
+		int n = 50;
+		int[] rowPerm = MatrixUtils.randomPermutationSparse(r, n);
+		int[] colPerm = MatrixUtils.randomPermutationSparse(r, n);
+		double[][] m = new double[n][n];
+		for (int row = 0; row < n; row++)
+			for (int col = 0; col < n; col++)
+				if (row / 5 == col / 5)
+					m[rowPerm[row]][colPerm[col]] = 0.2;
+
+		SparseMatrix sm = SparseMatrix.fromDense(m);
+		for (int i = 0; i < 10; i++) {
+			int[] perm = d.samplePermutation(r, sm);
+			assertTrue(MatrixUtils.isPermutation(CoeffAndMatrix.fromFlatPerm(perm)));
+		}
+	}
+
+	@Test
+	public void batchIsValid() throws BVNException {
+		BVNDecomposer d = new BVNDecomposer();
+		d.setSamplingAlgorithm(algo);
+
+		double[][] random = MatrixUtils.randomMatrix(r, 20);
+		SinkhornBalancer.balance(random);
+
+		int[][] perms = d.sample(r, random, 50);
+		assertEquals(50, perms.length);
+		for (int[] perm : perms)
+			assertTrue(MatrixUtils.isPermutation(CoeffAndMatrix.fromFlatPerm(perm)));
+	}
+
+	@Test
+	public void intoBufferIsValid() throws BVNException {
+		BVNDecomposer d = new BVNDecomposer();
+		d.setSamplingAlgorithm(algo);
+
+		// the same buffer is reused across matrices of different sizes
+		int[] out = new int[30];
+		for (int n : new int[] { 10, 30, 10 }) {
+			double[][] random = MatrixUtils.randomMatrix(r, n);
+			SinkhornBalancer.balance(random);
+
+			for (int i = 0; i < 5; i++) {
+				d.samplePermutation(r, random, out);
+				assertTrue(MatrixUtils.isPermutation(CoeffAndMatrix.fromFlatPerm(Arrays.copyOf(out, n))));
+			}
+		}
+	}
+
 
 }
@@ -24,14 +24,19 @@ package info.rmarcus.birkhoffvonneumann;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
@@ -277,6 +282,561 @@ public class BVNDecomposerTest {
 
 	}
 
+	@Test
+	public void matchingEnginesReconstructTest() throws BVNException {
+		double[][] m = MatrixUtils.randomMatrix(new Random(42), 20);
+		SinkhornBalancer.balance(m);
+
+		for (MatchingEngine me : MatchingEngine.values()) {
+			BVNDecomposer d = new BVNDecomposer();
+			d.setMatchingEngine(me);
+			assertReconstructs(m, d.decomposeBistocastic(m));
+		}
+	}
+
+	@Test
+	public void greedyMatchingEnginesTest() throws BVNException {
+		double[][] m = MatrixUtils.randomMatrix(new Random(43), 20);
+		SinkhornBalancer.balance(m);
+
+		double[][] previousMean = null;
+		for (MatchingEngine me : MatchingEngine.values()) {
+			BVNDecomposer d = new BVNDecomposer(DecompositionType.GREEDY);
+			d.setMatchingEngine(me);
+			assertReconstructs(m, d.decomposeBistocastic(m));
+
+			double[][] mean = d.meanPermutation(m);
+			assertTrue(MatrixUtils.isPermutation(mean));
+			if (previousMean != null) {
+				for (int row = 0; row < m.length; row++)
+					assertArrayEquals(previousMean[row], mean[row], 0.0);
+			}
+			previousMean = mean;
+		}
+	}
+
+	@Test
+	public void assignmentSolverTest() {
+		Random r = new Random(44);
+		int n = 6;
+		AssignmentSolver solver = new HungarianSolver(n);
+		double[] cost = new double[n * n];
+		int[] out = new int[n];
+
+		// the costs only grow from one call to the next, so the potentials carry over
+		for (int round = 0; round < 20; round++) {
+			for (int i = 0; i < cost.length; i++)
+				cost[i] += (r.nextInt(4) == 0 ? 10.0 : 1.0) * r.nextDouble();
+
+			solver.solve(cost, out);
+			assertTrue(MatrixUtils.isPermutation(CoeffAndMatrix.fromFlatPerm(out)));
+			assertEquals(bruteForceAssignment(cost, n), assignmentCost(cost, n, out), 1e-9);
+		}
+	}
+
+	@Test
+	public void assignmentSolverWarmTest() {
+		Random r = new Random(45);
+		int n = 6;
+		AssignmentSolver solver = new HungarianSolver(n);
+		double[] cost = new double[n * n];
+		int[] out = new int[n];
+
+		// as in a GREEDY decomposition, only the entries of the last assignment grow,
+		// so most of the last matching can be kept
+		for (int i = 0; i < cost.length; i++)
+			cost[i] = r.nextDouble();
+
+		for (int round = 0; round < 30; round++) {
+			solver.solve(cost, out);
+			assertTrue(MatrixUtils.isPermutation(CoeffAndMatrix.fromFlatPerm(out)));
+			assertEquals(bruteForceAssignment(cost, n), assignmentCost(cost, n, out), 1e-9);
+
+			for (int row = 0; row < n; row++)
+				cost[row * n + out[row]] += (r.nextBoolean() ? 0.0 : r.nextDouble());
+		}
+
+		// unrelated costs, which may be lower, need a reset
+		for (int i = 0; i < cost.length; i++)
+			cost[i] = r.nextDouble();
+
+		solver.reset();
+		solver.solve(cost, out);
+		assertEquals(bruteForceAssignment(cost, n), assignmentCost(cost, n, out), 1e-9);
+	}
+
+	@Test
+	public void auctionSolverTest() {
+		Random r = new Random(46);
+		int n = 6;
+		AssignmentSolver solver = new AuctionSolver(n, null);
+		double[] cost = new double[n * n];
+		int[] out = new int[n];
+
+		for (int i = 0; i < cost.length; i++)
+			cost[i] = 1.0 + r.nextDouble();
+
+		for (int round = 0; round < 30; round++) {
+			solver.solve(cost, out);
+			assertTrue(MatrixUtils.isPermutation(CoeffAndMatrix.fromFlatPerm(out)));
+
+			double best = bruteForceAssignment(cost, n);
+			assertEquals(best, assignmentCost(cost, n, out), best * AuctionSolver.RELATIVE_ACCURACY);
+
+			for (int row = 0; row < n; row++)
+				cost[row * n + out[row]] += (r.nextBoolean() ? 0.0 : r.nextDouble());
+		}
+	}
+
+	@Test
+	public void auctionSolverParallelTest() {
+		Random r = new Random(47);
+		int n = 200;
+		double[] cost = new double[n * n];
+		for (int i = 0; i < cost.length; i++)
+			cost[i] = 1.0 / (r.nextDouble() + 1e-3);
+
+		int[] hungarian = new int[n];
+		new HungarianSolver(n).solve(cost, hungarian);
+		double best = assignmentCost(cost, n, hungarian);
+
+		int[] auction = new int[n];
+		new AuctionSolver(n, new ForkJoinPool(4)).solve(cost, auction);
+		assertTrue(MatrixUtils.isPermutation(CoeffAndMatrix.fromFlatPerm(auction)));
+		assertEquals(best, assignmentCost(cost, n, auction), best * AuctionSolver.RELATIVE_ACCURACY);
+	}
+
+	@Test
+	public void partialDecompositionTest() throws BVNException {
+		double[][] m = MatrixUtils.randomMatrix(new Random(48), 30);
+		SinkhornBalancer.balance(m);
+		BVNDecomposer d = new BVNDecomposer(DecompositionType.GREEDY);
+
+		PartialDecomposition full = d.decomposePartial(m, new StopPolicy());
+		assertTrue(full.isComplete());
+		assertEquals(0.0, full.getResidualMass(), 0.001);
+
+		// the partial decompositions are prefixes of the full one
+		StopPolicy terms = new StopPolicy();
+		terms.setMaxTerms(5);
+		PartialDecomposition firstFive = d.decomposePartial(m, terms);
+		assertFalse(firstFive.isComplete());
+		assertEquals(5, firstFive.size());
+		for (int i = 0; i < 5; i++)
+			assertArrayEquals(full.getTerms().get(i).permutation, firstFive.getTerms().get(i).permutation);
+
+		double renormalized = 0.0;
+		for (CoeffAndPermutation cap : firstFive.getRenormalizedTerms()) {
+			assertTrue(cap.coeff > 0.0 && cap.coeff <= 1.0);
+			renormalized += cap.coeff;
+		}
+		assertEquals(1.0, renormalized, 1e-9);
+		assertEquals(1.0, firstFive.getCapturedMass() + firstFive.getResidualMass(), 1e-9);
+
+		StopPolicy mass = new StopPolicy();
+		mass.setResidualMass(0.5);
+		PartialDecomposition half = d.decomposePartial(m, mass);
+		assertTrue(half.getResidualMass() <= 0.5);
+		assertTrue(half.getResidualMass() + half.getTerms().get(half.size() - 1).coeff > 0.5);
+		assertTrue(half.size() < full.size());
+
+		// an expired deadline still finds one term, so the result can be sampled
+		StopPolicy time = new StopPolicy();
+		time.setTimeLimit(0);
+		PartialDecomposition one = d.decomposePartial(m, time);
+		assertEquals(1, one.size());
+		int[] sample = one.toDistribution().samplePermutation(new Random(1));
+		assertArrayEquals(one.getTerms().get(0).permutation, sample);
+	}
+
+	@Test
+	public void toleranceTest() throws BVNException {
+		// two permutations, plus a uniform haze of 2e-5 on every entry, standing in for
+		// the drift a large matrix picks up
+		Random r = new Random(49);
+		int n = 40;
+		double haze = 2e-5;
+		int[] p1 = MatrixUtils.randomPermutationSparse(r, n);
+		int[] p2 = new int[n];
+		for (int row = 0; row < n; row++)
+			p2[row] = p1[(row + 1) % n];
+
+		double[][] m = new double[n][n];
+		for (int row = 0; row < n; row++) {
+			Arrays.fill(m[row], haze);
+			m[row][p1[row]] += 0.4 * (1 - n * haze);
+			m[row][p2[row]] += 0.6 * (1 - n * haze);
+		}
+
+		BVNDecomposer d = new BVNDecomposer(DecompositionType.GREEDY);
+		PartialDecomposition exact = d.decomposePartial(m, new StopPolicy());
+		assertTrue(exact.size() > 2);
+
+		// 1e-5 + 1e-6 * 40 = 5e-5 is above the haze, so only the two permutations are left
+		d.setTolerance(new Tolerance(BVNDecomposer.EPSILON, 1e-6));
+		PartialDecomposition loose = d.decomposePartial(m, new StopPolicy());
+		assertEquals(2, loose.size());
+		assertEquals(1.0 - (n - 2) * haze, loose.getCapturedMass(), 1e-9);
+
+		// the same relative tolerance accepts row sums that have drifted by 3e-5
+		for (int row = 0; row < n; row++)
+			m[row][p1[row]] += 3e-5;
+		BVNUtils.checkMatrixInput(m, new Tolerance(BVNDecomposer.EPSILON, 1e-6));
+		try {
+			BVNUtils.checkMatrixInput(m);
+			fail("Drifted matrix accepted with the default tolerance");
+		} catch (BVNNonBistochasticMatrixException e) {
+			// expected
+		}
+	}
+
+	private static double assignmentCost(double[] cost, int n, int[] perm) {
+		double total = 0.0;
+		for (int row = 0; row < n; row++)
+			total += cost[row * n + perm[row]];
+		return total;
+	}
+
+	private static double bruteForceAssignment(double[] cost, int n) {
+		double best = Double.POSITIVE_INFINITY;
+		for (int k = 0; k < 720; k++)
+			best = Math.min(best, assignmentCost(cost, n, ChiSquaredTest.perm(n, k)));
+		return best;
+	}
+
+	@Test
+	public void decomposeToPermutationsTest() throws BVNException {
+		double[][] m = MatrixUtils.randomMatrix(new Random(7), 15);
+		SinkhornBalancer.balance(m);
+
+		Iterator<CoeffAndMatrix> dense = decompose(m);
+		Iterator<CoeffAndPermutation> sparse = new BVNDecomposer().decomposeToPermutations(m);
+
+		while (dense.hasNext()) {
+			assertTrue(sparse.hasNext());
+			CoeffAndMatrix cam = NullUtils.orThrow(dense.next(), () -> new BVNRuntimeException("assertion error!"));
+			CoeffAndPermutation cap = NullUtils.orThrow(sparse.next(), () -> new BVNRuntimeException("assertion error!"));
+
+			assertEquals(cam.coeff, cap.coeff, BVNDecomposer.EPSILON);
+			assertArrayEquals(CoeffAndMatrix.asFlatPerm(cam.matrix), cap.permutation);
+		}
+
+		assertFalse(sparse.hasNext());
+	}
+
+	@Test
+	public void perfectFindsFewestTermsTest() throws BVNException {
+		double[][] m = new double[6][6];
+		int[][] perms = new int[][] {
+			{0, 1, 2, 3, 4, 5},
+			{1, 2, 3, 4, 5, 0},
+			{3, 5, 4, 0, 2, 1}
+		};
+		double[] coeffs = new double[] {0.5, 0.3, 0.2};
+
+		for (int i = 0; i < perms.length; i++)
+			for (int row = 0; row < m.length; row++)
+				m[row][perms[i][row]] += coeffs[i];
+
+		Iterator<CoeffAndMatrix> i = decompose(m, DecompositionType.PERFECT);
+		int terms = 0;
+		double coeffSum = 0.0;
+		while (i.hasNext()) {
+			CoeffAndMatrix cam = NullUtils.orThrow(i.next(), () -> new BVNRuntimeException("assertion error!"));
+			assertTrue(MatrixUtils.isPermutation(cam.matrix));
+			coeffSum += cam.coeff;
+			terms++;
+		}
+
+		assertEquals(3, terms);
+		assertEquals(1.0, coeffSum, BVNDecomposer.EPSILON);
+	}
+
+	@Test
+	public void perfectReconstructsTest() throws BVNException {
+		double[][] m = MatrixUtils.randomMatrix(new Random(3), 12);
+		SinkhornBalancer.balance(m);
 
+		BVNDecomposer d = new BVNDecomposer(DecompositionType.PERFECT);
+		d.setTimeBudget(100);
+		assertReconstructs(m, d.decomposeBistocastic(m));
+
+		// with no time to search, the BVN method is used
+		d.setTimeBudget(0);
+		assertReconstructs(m, d.decomposeBistocastic(m));
+	}
+
+	@Test
+	public void perfectStopsBeforeBudgetTest() throws BVNException {
+		// a dense matrix cannot reach the lower bound, so only the restart limit ends the search
+		double[][] m = MatrixUtils.randomMatrix(new Random(5), 6);
+		SinkhornBalancer.balance(m);
+
+		SparseMatrix sparse = SparseMatrix.fromDense(m);
+		double[] values = new double[sparse.getNonZeroCount()];
+		for (int i = 0; i < values.length; i++)
+			values[i] = sparse.getValue(i);
+
+		PerfectDecomposer p = new PerfectDecomposer(sparse, values, BVNDecomposer.EPSILON);
+		assertNotNull(p.decompose(60000));
+		assertEquals(PerfectDecomposer.MAX_STALE_RESTARTS + 1, p.getStaleRestarts());
+	}
+
+	@Test
+	public void batchSampleFrequencyTest() throws BVNException {
+		double[][] m = MatrixUtils.randomMatrix(new Random(4), 5);
+		SinkhornBalancer.balance(m);
+
+		BVNDecomposer d = new BVNDecomposer();
+		Map<String, Double> expected = new HashMap<>();
+		Iterator<CoeffAndPermutation> terms = d.decomposeToPermutations(m);
+		while (terms.hasNext()) {
+			CoeffAndPermutation cap = NullUtils.orThrow(terms.next(), () -> new BVNRuntimeException("assertion error!"));
+			expected.merge(Arrays.toString(cap.permutation), cap.coeff, Double::sum);
+		}
+
+		int count = 20000;
+		int[][] samples = d.sample(new Random(5), m, count);
+		assertEquals(count, samples.length);
+
+		Map<String, Integer> observed = new HashMap<>();
+		for (int[] perm : samples)
+			observed.merge(Arrays.toString(perm), 1, Integer::sum);
+
+		assertTrue(expected.keySet().containsAll(observed.keySet()));
+		for (Map.Entry<String, Double> e : expected.entrySet())
+			assertEquals(e.getValue(), observed.getOrDefault(e.getKey(), 0) / (double) count, 0.02);
+	}
+
+	@Test
+	public void prepareCacheTest() throws BVNException {
+		BVNDecomposer d = new BVNDecomposer();
+		double[][] m = MatrixUtils.randomMatrix(new Random(3), 6);
+		SinkhornBalancer.balance(m);
+
+		PreparedDistribution first = d.prepare(m);
+		assertTrue(first == d.prepare(m));
+
+		// an equal but distinct matrix is prepared again
+		assertFalse(first == d.prepare(MatrixUtils.clone(m)));
+
+		// so is the same matrix once it is modified in place
+		double[][] other = MatrixUtils.randomMatrix(new Random(4), 6);
+		SinkhornBalancer.balance(other);
+		for (int row = 0; row < m.length; row++)
+			m[row] = other[row];
+		PreparedDistribution second = d.prepare(m);
+		assertFalse(first == second);
+		assertReconstructs(m, second.getTerms().stream().map(CoeffAndPermutation::asCoeffAndMatrix).iterator());
+
+		d.setCacheSize(0);
+		assertFalse(d.prepare(m) == d.prepare(m));
+	}
+
+	@Test
+	public void entropySamplingWithZerosTest() throws BVNException {
+		double[][] m = {
+				{ 0.5, 0.0, 0.5, 0.0 },
+				{ 0.0, 0.3, 0.0, 0.7 },
+				{ 0.5, 0.0, 0.5, 0.0 },
+				{ 0.0, 0.7, 0.0, 0.3 }
+		};
+
+		BVNDecomposer d = new BVNDecomposer();
+		d.setSamplingAlgorithm(SamplingAlgorithm.ENTROPY);
+		Random r = new Random(11);
+		for (int i = 0; i < 50; i++) {
+			int[] perm = d.samplePermutation(r, m);
+			for (int row = 0; row < m.length; row++)
+				assertTrue(m[row][perm[row]] > 0);
+
+			perm = d.samplePermutation(r, SparseMatrix.fromDense(m));
+			for (int row = 0; row < m.length; row++)
+				assertTrue(m[row][perm[row]] > 0);
+		}
+	}
+
+	private static final double[][] MH_TARGET = {
+			{ 0.6, 0.3, 0.1 },
+			{ 0.3, 0.2, 0.5 },
+			{ 0.1, 0.5, 0.4 }
+	};
+
+	@Test
+	public void metropolisHastingsTargetTest() throws BVNException {
+		// the chain should draw each permutation in proportion to the product of its entries
+		BVNDecomposer d = new BVNDecomposer();
+		d.setSamplingAlgorithm(SamplingAlgorithm.METROPOLIS_HASTINGS);
+		Random r = new Random(8);
+
+		int[][] samples = new int[4000][];
+		for (int i = 0; i < samples.length; i++)
+			samples[i] = d.samplePermutation(r, MH_TARGET);
+
+		assertMatchesTarget(MH_TARGET, samples);
+	}
+
+	@Test
+	public void metropolisHastingsChainTest() throws BVNException {
+		MetropolisHastingsChain chain = new MetropolisHastingsChain(MH_TARGET, 8);
+		chain.setBurnIn(100);
+		chain.setThinning(10);
+		assertMatchesTarget(MH_TARGET, chain.stream().limit(4000).toArray(int[][]::new));
+
+		// moving to a matrix whose support excludes the current permutation restarts the chain
+		double[][] identity = MatrixUtils.identity(3);
+		chain.setMatrix(identity);
+		assertArrayEquals(new int[] { 0, 1, 2 }, chain.next());
+		assertEquals(0.0, chain.getLogDensity(), 0.0);
+
+		// a persistent chain in the decomposer keeps producing valid samples
+		BVNDecomposer d = new BVNDecomposer();
+		d.setSamplingAlgorithm(SamplingAlgorithm.METROPOLIS_HASTINGS);
+		d.setPersistentChain(true);
+		Random r = new Random(9);
+		int[][] samples = new int[4000][];
+		for (int i = 0; i < samples.length; i++)
+			samples[i] = d.samplePermutation(r, MH_TARGET);
+
+		assertMatchesTarget(MH_TARGET, samples);
+
+		// the same for a sparse matrix, including when its values are changed in place
+		double[] values = MatrixUtils.flatten(MH_TARGET);
+		SparseMatrix sparse = new SparseMatrix(3, new int[] { 0, 3, 6, 9 },
+				new int[] { 0, 1, 2, 0, 1, 2, 0, 1, 2 }, values);
+
+		for (int i = 0; i < samples.length; i++)
+			samples[i] = d.samplePermutation(r, sparse);
+		assertMatchesTarget(MH_TARGET, samples);
+
+		// leave the chain away from the identity, then move all of the mass onto it
+		int[] last;
+		do {
+			last = d.samplePermutation(r, sparse);
+		} while (Arrays.equals(last, new int[] { 0, 1, 2 }));
+
+		for (int row = 0; row < 3; row++)
+			for (int col = 0; col < 3; col++)
+				values[3 * row + col] = (row == col ? 1.0 : 0.0);
+		assertArrayEquals(new int[] { 0, 1, 2 }, d.samplePermutation(r, sparse));
+	}
+
+	@Test
+	public void multiChainTest() throws BVNException {
+		MultiChainSampler sampler = new MultiChainSampler(MH_TARGET, 4, 10);
+		sampler.setThinning(10);
+		int[][] samples = sampler.sample(4000);
+
+		assertEquals(4000, samples.length);
+		assertMatchesTarget(MH_TARGET, samples);
+		assertTrue(sampler.getBurnInSteps() > 0);
+		assertEquals(1.0, sampler.getRHat(), 0.05);
+		assertTrue(sampler.getEffectiveSampleSize() > 100);
+		assertTrue(sampler.getEffectiveSampleSize() < 4000 * 1.5);
+
+		// chains stuck around different values do not look mixed
+		double[][] traces = new double[2][100];
+		Random r = new Random(1);
+		for (int i = 0; i < 100; i++) {
+			traces[0][i] = r.nextGaussian();
+			traces[1][i] = 5 + r.nextGaussian();
+		}
+		assertTrue(MultiChainSampler.splitRHat(traces, 0, 100) > 2);
+
+		// batch sampling in the decomposer runs several chains
+		BVNDecomposer d = new BVNDecomposer();
+		d.setSamplingAlgorithm(SamplingAlgorithm.METROPOLIS_HASTINGS);
+		d.setChains(3);
+		assertMatchesTarget(MH_TARGET, d.sample(new Random(12), MH_TARGET, 6000));
+	}
+
+	private static void assertMatchesTarget(double[][] m, int[][] samples) {
+		Map<String, Integer> observed = new HashMap<>();
+		for (int[] perm : samples)
+			observed.merge(Arrays.toString(perm), 1, Integer::sum);
+
+		int[][] perms = { { 0, 1, 2 }, { 0, 2, 1 }, { 1, 0, 2 }, { 1, 2, 0 }, { 2, 0, 1 }, { 2, 1, 0 } };
+		double[] weights = new double[perms.length];
+		double total = 0.0;
+		for (int i = 0; i < perms.length; i++) {
+			weights[i] = m[0][perms[i][0]] * m[1][perms[i][1]] * m[2][perms[i][2]];
+			total += weights[i];
+		}
+
+		for (int i = 0; i < perms.length; i++) {
+			double freq = observed.getOrDefault(Arrays.toString(perms[i]), 0) / (double) samples.length;
+			assertEquals(weights[i] / total, freq, 0.03);
+		}
+	}
+
+	@Test
+	public void sparseCoordinatesTest() {
+		// unsorted, with a duplicate and an explicit zero
+		SparseMatrix sm = SparseMatrix.fromCoordinates(3,
+				new int[] { 2, 0, 1, 0, 1, 2, 0 },
+				new int[] { 0, 1, 2, 1, 0, 1, 2 },
+				new double[] { 0.5, 0.25, 0.5, 0.25, 0.5, 0.5, 0.0 });
+
+		assertEquals(5, sm.getNonZeroCount());
+		assertEquals(0.5, sm.get(0, 1), 0.0);
+		assertEquals(0.0, sm.get(0, 2), 0.0);
+		assertEquals(-1, sm.indexOf(1, 1));
+		assertArrayEquals(new double[] { 0.5, 0.0, 0.5 }, sm.toDense()[1], 0.0);
+	}
+
+	@Test
+	public void sparseDecompositionTest() throws BVNException {
+		Random r = new Random(7);
+		int n = 200;
+		double[][] m = new double[n][n];
+		for (int term = 0; term < 4; term++) {
+			int[] perm = MatrixUtils.randomPermutationSparse(r, n);
+			for (int row = 0; row < n; row++)
+				m[row][perm[row]] += 0.25;
+		}
+
+		SparseMatrix sm = SparseMatrix.fromDense(m);
+		assertTrue(sm.getNonZeroCount() <= 4 * n);
+
+		for (DecompositionType type : DecompositionType.values())
+			assertReconstructs(m, new BVNDecomposer(type).decomposeBistocastic(sm));
+
+		// moving mass within a row keeps the row sums, but breaks two column sums
+		int col = sm.getColumn(sm.getRowStart(0));
+		m[0][(col + 1) % n] += m[0][col];
+		m[0][col] = 0;
+		try {
+			new BVNDecomposer().decomposeBistocastic(SparseMatrix.fromDense(m));
+			fail("Non-bistochastic sparse matrix was accepted");
+		} catch (BVNNonBistochasticMatrixException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void denseDecompositionTest() throws BVNException {
+		Random r = new Random(8);
+		double[][] m = MatrixUtils.randomMatrix(r, 20);
+		SinkhornBalancer.balance(m);
+
+		DenseMatrix dm = DenseMatrix.fromArray(m);
+		assertReconstructs(m, new BVNDecomposer().decomposeBistocastic(dm));
+	}
+
+	private static void assertReconstructs(double[][] m, Iterator<CoeffAndMatrix> i) {
+		double[][] sum = new double[m.length][m.length];
+		double[][] tmp = new double[m.length][m.length];
+
+		while (i.hasNext()) {
+			CoeffAndMatrix cam = NullUtils.orThrow(i.next(), () -> new BVNRuntimeException("assertion error!"));
+			assertTrue(MatrixUtils.isPermutation(cam.matrix));
+
+			MatrixUtils.multiply(tmp, cam.matrix, cam.coeff);
+			MatrixUtils.add(sum, sum, tmp);
+		}
+
+		for (int row = 0; row < m.length; row++)
+			assertArrayEquals(m[row], sum[row], 0.001);
+	}
 
 }
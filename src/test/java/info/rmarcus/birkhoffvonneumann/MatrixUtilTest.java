@@ -20,14 +20,17 @@
  
 package info.rmarcus.birkhoffvonneumann;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import org.junit.Test;
 
 import info.rmarcus.birkhoffvonneumann.BVNDecomposer;
 import info.rmarcus.birkhoffvonneumann.MatrixUtils;
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
 
 public class MatrixUtilTest {
 
@@ -147,4 +150,81 @@ public class MatrixUtilTest {
 		assertEquals(10.0, p, BVNDecomposer.EPSILON);
 	}
 
+	@Test
+	public void permLargeTest() {
+		// the permanent of the all-ones matrix is n!, and of a permutation matrix is one.
+		// n = 20 is large enough to be split into parallel chunks.
+		double factorial = 1.0;
+		for (int n = 1; n <= 20; n++) {
+			factorial *= n;
+			double[][] ones = new double[n][n];
+			for (double[] row : ones)
+				Arrays.fill(row, 1.0);
+
+			assertEquals(factorial, MatrixUtils.permanent(ones), factorial * 1e-9);
+			assertEquals(1.0, MatrixUtils.permanent(MatrixUtils.randomPermutation(new Random(n), n)), 1e-9);
+		}
+	}
+
+	@Test(expected = BVNRuntimeException.class)
+	public void permTooLargeTest() {
+		MatrixUtils.permanent(new double[64][64]);
+	}
+
+	@Test(expected = BVNRuntimeException.class)
+	public void denseMatrixTooLargeTest() {
+		// 46341^2 overflows an int
+		new DenseMatrix(46341);
+	}
+
+	@Test
+	public void denseMatrixTest() {
+		Random r = new Random(9);
+		double[][] a = MatrixUtils.randomMatrix(r, 7);
+		double[][] b = MatrixUtils.randomMatrix(r, 7);
+		DenseMatrix da = DenseMatrix.fromArray(a);
+		DenseMatrix db = DenseMatrix.fromArray(b);
+		assertEquals(a[3][5], da.get(3, 5), 0.0);
+
+		// each dense operation matches its double[][] counterpart
+		double[][] expected = new double[7][7];
+		DenseMatrix actual = new DenseMatrix(7);
+
+		MatrixUtils.multiply(expected, a, b);
+		MatrixUtils.multiply(actual, da, db);
+		assertMatrixEquals(expected, actual.toArray());
+
+		MatrixUtils.add(expected, a, b);
+		MatrixUtils.add(actual, da, db);
+		assertMatrixEquals(expected, actual.toArray());
+
+		MatrixUtils.subtract(expected, a, b);
+		MatrixUtils.subtract(actual, da, db);
+		assertMatrixEquals(expected, actual.toArray());
+
+		MatrixUtils.apply(expected, a, Math::sqrt);
+		MatrixUtils.apply(actual, da, Math::sqrt);
+		assertMatrixEquals(expected, actual.toArray());
+
+		// addScaled is multiply-then-add without the temporary
+		double[] flat = MatrixUtils.flatten(b);
+		assertEquals(b[2][4], flat[2 * 7 + 4], 0.0);
+		assertArrayEquals(new double[] { 1, 2, 3, 4, 5, 6 },
+				MatrixUtils.flatten(new double[][] { { 1, 2, 3 }, { 4, 5, 6 } }), 0.0);
+		assertArrayEquals(new double[] { 1, 2, 3, 4, 5, 6 },
+				MatrixUtils.flatten(new double[][] { { 1 }, { 2, 3, 4 }, { 5, 6 } }), 0.0);
+		double[][] tmp = new double[7][7];
+		MatrixUtils.multiply(tmp, flat, 0.5);
+		MatrixUtils.add(expected, a, tmp);
+		double[][] fused = MatrixUtils.clone(a);
+		MatrixUtils.addScaled(fused, flat, 0.5);
+		assertMatrixEquals(expected, fused);
+	}
+
+	private static void assertMatrixEquals(double[][] expected, double[][] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++)
+			assertArrayEquals(expected[i], actual[i], 1e-15);
+	}
+
 }
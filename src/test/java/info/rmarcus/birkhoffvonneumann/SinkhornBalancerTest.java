@@ -20,14 +20,21 @@
  
 package info.rmarcus.birkhoffvonneumann;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
 import org.junit.Test;
 
 import info.rmarcus.birkhoffvonneumann.BVNUtils;
 import info.rmarcus.birkhoffvonneumann.SinkhornBalancer;
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNException;
 import info.rmarcus.birkhoffvonneumann.exceptions.BVNNonSquareMatrixException;
+import info.rmarcus.birkhoffvonneumann.exceptions.BVNRuntimeException;
 
 public class SinkhornBalancerTest {
 
@@ -48,4 +55,221 @@ public class SinkhornBalancerTest {
 		assertTrue(matrix[2][1] < matrix[2][2]);
 	}
 
+
+	@Test
+	public void optionsTest() throws BVNException {
+		double[][] original = MatrixUtils.randomMatrix(new Random(2), 20);
+		double[][] matrix = MatrixUtils.clone(original);
+
+		SinkhornOptions options = new SinkhornOptions();
+		options.setTolerance(1e-10);
+		SinkhornResult result = SinkhornBalancer.balance(matrix, options);
+
+		assertTrue(result.isConverged());
+		assertTrue(result.getIterations() > 0);
+		assertTrue(result.getResidual() <= 1e-10);
+		BVNUtils.checkMatrixInput(matrix);
+
+		// the balanced matrix is the original scaled by the two vectors
+		for (int row = 0; row < matrix.length; row++)
+			for (int col = 0; col < matrix.length; col++)
+				assertEquals(original[row][col] * result.getRowScaling()[row] * result.getColScaling()[col],
+						matrix[row][col], 1e-12);
+
+		// stopping early is reported, not thrown
+		matrix = MatrixUtils.clone(original);
+		options.setMaxIterations(1);
+		result = SinkhornBalancer.balance(matrix, options);
+		assertFalse(result.isConverged());
+		assertEquals(1, result.getIterations());
+	}
+
+	@Test(expected = BVNRuntimeException.class)
+	public void unbalanceableTest() {
+		// the last two rows compete for the same column, so no scaling can balance this
+		double[][] matrix = new double[][] { {1, 1, 1}, {0, 1, 0}, {0, 1, 0} };
+		SinkhornBalancer.balance(matrix);
+	}
+
+	@Test
+	public void logTest() throws BVNException {
+		double[][] matrix = MatrixUtils.randomMatrix(new Random(3), 20);
+		double[][] logMatrix = new double[matrix.length][matrix.length];
+		for (int row = 0; row < matrix.length; row++)
+			for (int col = 0; col < matrix.length; col++)
+				logMatrix[row][col] = Math.log(matrix[row][col]);
+
+		SinkhornBalancer.balance(matrix);
+		SinkhornBalancer.balanceLog(logMatrix);
+		BVNUtils.checkMatrixInput(logMatrix);
+
+		for (int row = 0; row < matrix.length; row++)
+			assertArrayEquals(matrix[row], logMatrix[row], 1e-6);
+	}
+
+	@Test
+	public void logUnderflowTest() throws BVNException {
+		// every entry but the diagonal is zero in linear space, and even the diagonal
+		// underflows, but the log weights still balance to the identity
+		double[][] logMatrix = new double[][] {
+			{ -1000, -5000, -9000 },
+			{ -5000, -2000, Double.NEGATIVE_INFINITY },
+			{ -9000, -7000, -3000 }
+		};
+		SinkhornBalancer.balanceLog(logMatrix);
+		BVNUtils.checkMatrixInput(logMatrix);
+		for (int i = 0; i < logMatrix.length; i++)
+			assertEquals(1.0, logMatrix[i][i], 1e-12);
+
+		// J - I, which starts column 0 with a zero weight
+		double[][] offDiagonal = new double[][] {
+			{ Double.NEGATIVE_INFINITY, 0, 0 },
+			{ 0, Double.NEGATIVE_INFINITY, 0 },
+			{ 0, 0, Double.NEGATIVE_INFINITY }
+		};
+		SinkhornBalancer.balanceLog(offDiagonal);
+		BVNUtils.checkMatrixInput(offDiagonal);
+		for (int row = 0; row < offDiagonal.length; row++)
+			for (int col = 0; col < offDiagonal.length; col++)
+				assertEquals(row == col ? 0.0 : 0.5, offDiagonal[row][col], 1e-12);
+	}
+
+	@Test
+	public void algorithmsTest() throws BVNException {
+		Random r = new Random(4);
+		double[][] random = MatrixUtils.randomMatrix(r, 20);
+
+		// two blocks that are only weakly coupled, which Sinkhorn-Knopp is slow on
+		double[][] blocks = MatrixUtils.randomMatrix(r, 20);
+		for (int row = 0; row < 20; row++)
+			for (int col = 0; col < 20; col++)
+				if ((row < 7) != (col < 7))
+					blocks[row][col] *= (row < 7 ? 1e-2 : 1e-5);
+
+		for (SinkhornAlgorithm algo : SinkhornAlgorithm.values()) {
+			for (double[][] original : new double[][][] { random, blocks }) {
+				SinkhornOptions options = new SinkhornOptions();
+				options.setAlgorithm(algo);
+				options.setTolerance(1e-10);
+
+				double[][] matrix = MatrixUtils.clone(original);
+				SinkhornResult result = SinkhornBalancer.balance(matrix, options);
+				assertTrue(algo + " " + result, result.isConverged());
+				BVNUtils.checkMatrixInput(matrix);
+
+				for (int row = 0; row < matrix.length; row++)
+					for (int col = 0; col < matrix.length; col++)
+						assertEquals(original[row][col] * result.getRowScaling()[row] * result.getColScaling()[col],
+								matrix[row][col], 1e-12);
+			}
+		}
+	}
+
+	@Test
+	public void parallelTest() throws BVNException {
+		double[][] original = MatrixUtils.randomMatrix(new Random(5), 300);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (SinkhornAlgorithm algo : new SinkhornAlgorithm[] { SinkhornAlgorithm.SINKHORN_KNOPP, SinkhornAlgorithm.ANDERSON }) {
+				SinkhornOptions options = new SinkhornOptions();
+				options.setAlgorithm(algo);
+				double[][] sequential = MatrixUtils.clone(original);
+				SinkhornResult expected = SinkhornBalancer.balance(sequential, options);
+
+				options.setPool(pool);
+				double[][] parallel = MatrixUtils.clone(original);
+				SinkhornResult result = SinkhornBalancer.balance(parallel, options);
+
+				// only the order the partial column sums are added in differs
+				assertTrue(result.isConverged());
+				assertEquals(expected.getIterations(), result.getIterations());
+				BVNUtils.checkMatrixInput(parallel);
+				for (int row = 0; row < parallel.length; row++)
+					assertArrayEquals(sequential[row], parallel[row], 1e-12);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void warmStartTest() throws BVNException {
+		Random r = new Random(6);
+		double[][] original = MatrixUtils.randomMatrix(r, 30);
+		SinkhornOptions options = new SinkhornOptions();
+		options.setTolerance(1e-10);
+		WarmSinkhornBalancer warm = new WarmSinkhornBalancer(options);
+
+		double[][] matrix = MatrixUtils.clone(original);
+		SinkhornResult cold = warm.balance(matrix);
+		assertTrue(cold.getIterations() > 0);
+
+		// the same matrix again is already balanced by the remembered vectors
+		double[][] again = MatrixUtils.clone(original);
+		SinkhornResult result = warm.balance(again);
+		assertEquals(0, result.getIterations());
+		for (int row = 0; row < matrix.length; row++)
+			assertArrayEquals(matrix[row], again[row], 1e-12);
+
+		// a small change takes fewer sweeps than starting over
+		double[][] perturbed = MatrixUtils.clone(original);
+		for (double[] row : perturbed)
+			for (int col = 0; col < row.length; col++)
+				row[col] *= 1.0 + 0.001 * r.nextDouble();
+
+		SinkhornResult fromScratch = SinkhornBalancer.balance(MatrixUtils.clone(perturbed), options);
+		result = warm.balance(perturbed);
+		assertTrue(result.isConverged());
+		assertTrue(result.getIterations() < fromScratch.getIterations());
+		BVNUtils.checkMatrixInput(perturbed);
+
+		// a different size starts over
+		result = warm.balance(MatrixUtils.randomMatrix(r, 10));
+		assertTrue(result.isConverged());
+	}
+
+	@Test
+	public void warmStartLogTest() throws BVNException {
+		double[][] logMatrix = MatrixUtils.randomMatrix(new Random(7), 30);
+		for (double[] row : logMatrix)
+			for (int col = 0; col < row.length; col++)
+				row[col] *= -20.0;
+
+		WarmSinkhornBalancer warm = new WarmSinkhornBalancer();
+		double[][] balanced = MatrixUtils.clone(logMatrix);
+		assertTrue(warm.balanceLog(balanced).getIterations() > 0);
+		BVNUtils.checkMatrixInput(balanced);
+
+		double[][] again = MatrixUtils.clone(logMatrix);
+		assertEquals(0, warm.balanceLog(again).getIterations());
+		for (int row = 0; row < balanced.length; row++)
+			assertArrayEquals(balanced[row], again[row], 1e-12);
+	}
+
+	@Test
+	public void denseTest() throws BVNException {
+		double[][] original = MatrixUtils.randomMatrix(new Random(10), 300);
+		ForkJoinPool pool = new ForkJoinPool(3);
+		try {
+			for (SinkhornAlgorithm algo : SinkhornAlgorithm.values()) {
+				SinkhornOptions options = new SinkhornOptions();
+				options.setAlgorithm(algo);
+				options.setPool(pool);
+
+				double[][] jagged = MatrixUtils.clone(original);
+				SinkhornBalancer.balance(jagged, options);
+
+				DenseMatrix dense = DenseMatrix.fromArray(original);
+				assertTrue(SinkhornBalancer.balance(dense, options).isConverged());
+
+				double[][] result = dense.toArray();
+				BVNUtils.checkMatrixInput(result);
+				for (int row = 0; row < result.length; row++)
+					assertArrayEquals(jagged[row], result[row], 1e-15);
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
 }
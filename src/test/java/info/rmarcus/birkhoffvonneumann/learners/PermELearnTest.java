@@ -91,4 +91,26 @@ public class PermELearnTest {
 		assertArrayEquals(new double[] {0,0,0,0,1}, mean[4], 0.01);
 	}
 
+	@Test
+	public void largeLearningRateTest() {
+		double[][] lossMatrix = new double[][] {
+			{2, 1, 0, 1, 2},
+			{0, 1, 2, 3, 4},
+			{3, 2, 1, 0, 1},
+			{1, 0, 1, 2, 3},
+			{4, 3, 2, 1, 0}
+		};
+
+		// exp(-1000 * loss) underflows to zero for every non-zero loss
+		PermELearn pel = new PermELearn(5, 1000);
+		pel.updateWeights(lossMatrix);
+
+		double[][] mean = pel.getMeanPermutation();
+		assertArrayEquals(new double[] {0,0,1,0,0}, mean[0], 0.01);
+		assertArrayEquals(new double[] {1,0,0,0,0}, mean[1], 0.01);
+		assertArrayEquals(new double[] {0,0,0,1,0}, mean[2], 0.01);
+		assertArrayEquals(new double[] {0,1,0,0,0}, mean[3], 0.01);
+		assertArrayEquals(new double[] {0,0,0,0,1}, mean[4], 0.01);
+	}
+
 }